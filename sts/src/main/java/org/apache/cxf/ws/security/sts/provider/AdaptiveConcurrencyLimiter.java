@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent executions of one operation. The limit
+ * adapts to the measured latency (AIMD): while requests complete within
+ * <code>latencyTolerance</code> times the lowest latency seen in the recent
+ * sample window the limit grows by about one per round trip, once they take
+ * longer it is cut by <code>backoffRatio</code>, at most once per sample
+ * window. Only successful requests are sampled; failures often return early
+ * and would drag the latency baseline down.
+ * <p>
+ * Requests above the limit wait in a short bounded queue for at most
+ * <code>maxQueueWaitMillis</code>. When the queue is full, or the wait times
+ * out, {@link #acquire()} returns <code>false</code> and the caller should
+ * reject the request right away.
+ */
+public class AdaptiveConcurrencyLimiter implements AdaptiveConcurrencyLimiterMBean {
+
+    private int minLimit = 1;
+    private int maxLimit = 200;
+    private int maxQueueSize = 16;
+    private long maxQueueWaitMillis = 50L;
+    private double latencyTolerance = 2.0;
+    private double backoffRatio = 0.9;
+    private int sampleWindow = 500;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+
+    // guarded by this
+    private double limit = 20;
+    private int inFlight;
+    private int waiting;
+    private long minLatency = Long.MAX_VALUE;
+    private long windowMinLatency = Long.MAX_VALUE;
+    private int windowSamples;
+    private boolean backedOff;
+
+    /**
+     * Sets the limit the limiter starts with.
+     */
+    public synchronized void setInitialLimit(int initialLimit) {
+        this.limit = initialLimit;
+    }
+
+    public synchronized void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public synchronized void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Maximum number of requests waiting for a slot. 0 disables queueing.
+     */
+    public synchronized void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public synchronized void setMaxQueueWaitMillis(long maxQueueWaitMillis) {
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+    }
+
+    /**
+     * Latency, relative to the lowest recent latency, above which the limit
+     * is decreased.
+     */
+    public synchronized void setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    public synchronized void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Number of samples after which the lowest latency is measured anew, so
+     * the baseline follows slow changes in the backend.
+     */
+    public synchronized void setSampleWindow(int sampleWindow) {
+        this.sampleWindow = sampleWindow;
+    }
+
+    /**
+     * Takes a slot, waiting in the queue if the limit is reached.
+     *
+     * @return <code>false</code> if the request should be shed
+     */
+    public synchronized boolean acquire() throws InterruptedException {
+        if (inFlight < getLimit()) {
+            inFlight++;
+            admitted.incrementAndGet();
+            return true;
+        }
+        if (waiting >= maxQueueSize) {
+            shed.incrementAndGet();
+            return false;
+        }
+        queued.incrementAndGet();
+        waiting++;
+        try {
+            long deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMillis);
+            while (inFlight >= getLimit()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    shed.incrementAndGet();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            inFlight++;
+            admitted.incrementAndGet();
+            return true;
+        } finally {
+            waiting--;
+        }
+    }
+
+    /**
+     * Releases a slot taken by {@link #acquire()} and, if the request
+     * succeeded, feeds its latency into the limit.
+     */
+    public synchronized void release(long latencyNanos, boolean success) {
+        inFlight--;
+        if (success) {
+            update(latencyNanos);
+        }
+        if (waiting > 0) {
+            notifyAll();
+        }
+    }
+
+    private void update(long latencyNanos) {
+        if (latencyNanos < windowMinLatency) {
+            windowMinLatency = latencyNanos;
+        }
+        if (latencyNanos < minLatency) {
+            minLatency = latencyNanos;
+        }
+        if (++windowSamples >= sampleWindow) {
+            minLatency = windowMinLatency;
+            windowMinLatency = Long.MAX_VALUE;
+            windowSamples = 0;
+            backedOff = false;
+        }
+
+        if (latencyNanos > minLatency * latencyTolerance) {
+            // the slow requests of one window are a single overload signal
+            if (!backedOff) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                backedOff = true;
+            }
+        } else if (inFlight + 1 >= limit / 2) {
+            // only grow while the limit is actually used
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return Math.max(minLimit, (int) limit);
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getShedCount() {
+        return shed.get();
+    }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Resource;
+import javax.xml.transform.Source;
+import javax.xml.ws.Service;
+import javax.xml.ws.ServiceMode;
+import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.WebServiceProvider;
+import javax.xml.ws.handler.MessageContext;
+
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+
+/**
+ * {@link SecurityTokenServiceProvider} that runs operations on a separate
+ * executor and suspends the HTTP request with a CXF continuation while the
+ * operation is in progress. Slow stages such as CRL downloads, user lookups
+ * or signing no longer hold a container thread; the response is written
+ * when the request is resumed.
+ * <p>
+ * If the transport does not support continuations (or the provider is
+ * called outside of CXF) the operation runs on the calling thread.
+ */
+@WebServiceProvider(serviceName = "SecurityTokenServiceProvider",
+        portName = "SecurityTokenServiceSOAP",
+        targetNamespace = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/wsdl",
+        wsdlLocation = "WEB-INF/classes/model/ws-trust-1.4-service.wsdl")
+@ServiceMode(value = Service.Mode.PAYLOAD)
+public class AsyncSecurityTokenServiceProvider extends SecurityTokenServiceProvider {
+
+    private static final long DEFAULT_TIMEOUT = 60000L;
+
+    @Resource
+    private WebServiceContext context;
+
+    private Executor executor;
+    private long timeout = DEFAULT_TIMEOUT;
+
+    public AsyncSecurityTokenServiceProvider() throws Exception {
+        super();
+    }
+
+    /**
+     * Executor running the operations. It should reject work once its queue
+     * is full (a bounded queue and an abort policy); rejected requests are
+     * answered with a "Server busy" fault right away instead of waiting.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Maximum time in milliseconds a request stays suspended.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public Source invoke(final Source request) {
+        Continuation continuation = getContinuation();
+        if (continuation == null || executor == null) {
+            return super.invoke(request);
+        }
+
+        synchronized (continuation) {
+            if (continuation.isNew()) {
+                final Continuation suspended = continuation;
+                // the worker thread has no access to the CXF message
+                final UsernameTokenCredentials credentials =
+                    UsernameTokenCredentials.getCurrent();
+                FutureTask<Source> task = new FutureTask<Source>(
+                        new Callable<Source>() {
+                            public Source call() {
+                                UsernameTokenCredentials.bind(credentials);
+                                try {
+                                    return invokeSynchronously(request);
+                                } finally {
+                                    UsernameTokenCredentials.unbind();
+                                }
+                            }
+                        }) {
+                    @Override
+                    protected void done() {
+                        synchronized (suspended) {
+                            suspended.resume();
+                        }
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    return fail(new STSException("Server busy", e,
+                            STSErrorCode.REQUEST_FAILED, false));
+                }
+                continuation.setObject(task);
+                continuation.suspend(timeout);
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            FutureTask<Source> task = (FutureTask<Source>) continuation.getObject();
+            if (!task.isDone()) {
+                task.cancel(true);
+                return fail(new STSException("Request timed out",
+                        STSErrorCode.REQUEST_FAILED, false));
+            }
+            return getResult(task);
+        }
+    }
+
+    void setWebServiceContext(WebServiceContext context) {
+        this.context = context;
+    }
+
+    private Source invokeSynchronously(Source request) {
+        return super.invoke(request);
+    }
+
+    private Source getResult(FutureTask<Source> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fail(e);
+        } catch (ExecutionException e) {
+            // faults were already built by the worker thread
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            return fail(e);
+        }
+    }
+
+    private Continuation getContinuation() {
+        if (context == null) {
+            return null;
+        }
+        MessageContext messageContext = context.getMessageContext();
+        if (messageContext == null) {
+            return null;
+        }
+        ContinuationProvider provider = (ContinuationProvider) messageContext
+                .get(ContinuationProvider.class.getName());
+        return provider == null ? null : provider.getContinuation();
+    }
+
+}
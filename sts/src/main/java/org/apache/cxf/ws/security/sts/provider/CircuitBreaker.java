@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+/**
+ * Circuit breaker for calls to one remote endpoint. While
+ * <code>CLOSED</code> every call is let through and its outcome recorded in a
+ * sliding window of the last <code>windowSize</code> calls. Once at least
+ * <code>minimumCalls</code> are recorded and the failure rate reaches
+ * <code>failureRateThreshold</code>, the breaker opens and
+ * {@link #allowRequest()} rejects calls without touching the endpoint. After
+ * <code>openMillis</code> a single trial call is let through
+ * (<code>HALF_OPEN</code>); it closes the breaker if it succeeds and opens it
+ * again if it fails.
+ * <p>
+ * Every call that was allowed must be followed by {@link #recordSuccess()}
+ * or {@link #recordFailure()}.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openMillis;
+
+    // guarded by this
+    private final boolean[] window;
+    private int position;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInProgress;
+    private long failingSince;
+
+    public CircuitBreaker(double failureRateThreshold, int windowSize,
+            int minimumCalls, long openMillis) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Returns whether a call may be made now. In the half-open state only
+     * the first caller gets <code>true</code>.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInProgress = true;
+            return true;
+        default:
+            if (trialInProgress) {
+                return false;
+            }
+            trialInProgress = true;
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether calls are rejected, without claiming the trial call.
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN
+                && System.currentTimeMillis() - openedAt < openMillis
+                || state == State.HALF_OPEN && trialInProgress;
+    }
+
+    public synchronized void recordSuccess() {
+        failingSince = 0;
+        if (state == State.HALF_OPEN) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        recordFailure(System.currentTimeMillis());
+    }
+
+    /**
+     * Records a failed call that was started at the given time. A call that
+     * took long to fail counts as failing from its start.
+     */
+    public synchronized void recordFailure(long startedAt) {
+        long now = System.currentTimeMillis();
+        if (failingSince == 0) {
+            failingSince = Math.min(startedAt, now);
+        }
+        if (state == State.HALF_OPEN) {
+            open(now);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (calls >= minimumCalls
+                    && failures >= failureRateThreshold * calls) {
+                open(now);
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Start time of the first failed call since the last success, 0 if the
+     * last call succeeded.
+     */
+    public synchronized long getFailingSince() {
+        return failingSince;
+    }
+
+    private void record(boolean failure) {
+        if (calls == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        trialInProgress = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        trialInProgress = false;
+        calls = 0;
+        failures = 0;
+        position = 0;
+    }
+
+}
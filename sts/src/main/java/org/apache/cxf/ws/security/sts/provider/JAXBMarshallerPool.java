@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * Bounded, thread-safe pool of {@link Unmarshaller} and {@link Marshaller}
+ * instances for a single {@link JAXBContext}. Neither is thread-safe, but both
+ * are expensive to create, so they are borrowed for the duration of one
+ * (un)marshal call and handed back afterwards. When the pool is empty a new
+ * instance is created (a miss); instances returned to a full pool are
+ * dropped.
+ */
+public class JAXBMarshallerPool {
+
+    private final JAXBContext jaxbContext;
+    private final int poolSize;
+    private final BlockingQueue<Unmarshaller> unmarshallers;
+    private final BlockingQueue<Marshaller> marshallers;
+
+    private final AtomicLong unmarshallerHits = new AtomicLong();
+    private final AtomicLong unmarshallerMisses = new AtomicLong();
+    private final AtomicLong marshallerHits = new AtomicLong();
+    private final AtomicLong marshallerMisses = new AtomicLong();
+
+    public JAXBMarshallerPool(JAXBContext jaxbContext, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: "
+                    + poolSize);
+        }
+        this.jaxbContext = jaxbContext;
+        this.poolSize = poolSize;
+        this.unmarshallers = new ArrayBlockingQueue<Unmarshaller>(poolSize);
+        this.marshallers = new ArrayBlockingQueue<Marshaller>(poolSize);
+    }
+
+    public JAXBContext getJaxbContext() {
+        return jaxbContext;
+    }
+
+    public Unmarshaller borrowUnmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        if (unmarshaller != null) {
+            unmarshallerHits.incrementAndGet();
+            return unmarshaller;
+        }
+        unmarshallerMisses.incrementAndGet();
+        return jaxbContext.createUnmarshaller();
+    }
+
+    public void returnUnmarshaller(Unmarshaller unmarshaller) {
+        if (unmarshaller != null) {
+            unmarshallers.offer(unmarshaller);
+        }
+    }
+
+    public Marshaller borrowMarshaller() throws JAXBException {
+        Marshaller marshaller = marshallers.poll();
+        if (marshaller != null) {
+            marshallerHits.incrementAndGet();
+            return marshaller;
+        }
+        marshallerMisses.incrementAndGet();
+        return jaxbContext.createMarshaller();
+    }
+
+    public void returnMarshaller(Marshaller marshaller) {
+        if (marshaller != null) {
+            marshallers.offer(marshaller);
+        }
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getIdleUnmarshallers() {
+        return unmarshallers.size();
+    }
+
+    public int getIdleMarshallers() {
+        return marshallers.size();
+    }
+
+    public long getUnmarshallerHits() {
+        return unmarshallerHits.get();
+    }
+
+    public long getUnmarshallerMisses() {
+        return unmarshallerMisses.get();
+    }
+
+    public long getMarshallerHits() {
+        return marshallerHits.get();
+    }
+
+    public long getMarshallerMisses() {
+        return marshallerMisses.get();
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Checks element depth, attribute count, text node length and the length of
+ * base64 encoded certificates against the {@link RequestLimits} while the
+ * document is pulled, so an oversized request fails at the offending event
+ * instead of after it has been turned into a DOM or JAXB tree.
+ */
+class LimitingXMLStreamReader extends StreamReaderDelegate {
+
+    private static final String DSIG_NAMESPACE = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String X509_CERTIFICATE = "X509Certificate";
+
+    private final RequestLimits limits;
+    private int depth;
+    private long textLength;
+    private boolean inCertificate;
+    private long certificateLength;
+
+    LimitingXMLStreamReader(XMLStreamReader reader, RequestLimits limits) {
+        super(reader);
+        this.limits = limits;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        switch (event) {
+        case START_ELEMENT:
+            depth++;
+            textLength = 0;
+            if (RequestLimits.isExceeded(depth, limits.getMaxElementDepth())) {
+                throw limits.exceeded("Element depth", limits.getMaxElementDepth());
+            }
+            if (RequestLimits.isExceeded(getAttributeCount(), limits
+                    .getMaxAttributeCount())) {
+                throw limits.exceeded("Attribute count of " + getLocalName(),
+                        limits.getMaxAttributeCount());
+            }
+            inCertificate = X509_CERTIFICATE.equals(getLocalName())
+                    && DSIG_NAMESPACE.equals(getNamespaceURI());
+            certificateLength = 0;
+            break;
+        case END_ELEMENT:
+            depth--;
+            textLength = 0;
+            inCertificate = false;
+            break;
+        case CHARACTERS:
+        case CDATA:
+        case SPACE:
+            // the parser may report one text node in several events
+            textLength += getTextLength();
+            if (RequestLimits.isExceeded(textLength, limits.getMaxTextLength())) {
+                throw limits.exceeded("Text length", limits.getMaxTextLength());
+            }
+            if (inCertificate) {
+                certificateLength += getTextLength();
+                if (RequestLimits.isExceeded(certificateLength, limits
+                        .getMaxCertificateLength())) {
+                    throw limits.exceeded("Certificate length", limits
+                            .getMaxCertificateLength());
+                }
+            }
+            break;
+        default:
+            break;
+        }
+        return event;
+    }
+
+    /**
+     * Implemented on top of {@link #next()}; the delegate's version would
+     * skip the checks.
+     */
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while ((event == CHARACTERS || event == CDATA) && isWhiteSpace()
+                || event == SPACE || event == PROCESSING_INSTRUCTION
+                || event == COMMENT) {
+            event = next();
+        }
+        if (event != START_ELEMENT && event != END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag",
+                    getLocation());
+        }
+        return event;
+    }
+
+    /**
+     * Implemented on top of {@link #next()}; the delegate's version would
+     * skip the checks.
+     */
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (getEventType() != START_ELEMENT) {
+            throw new XMLStreamException("Not at a start tag", getLocation());
+        }
+        StringBuilder content = new StringBuilder();
+        int event = next();
+        while (event != END_ELEMENT) {
+            if (event == CHARACTERS || event == CDATA || event == SPACE
+                    || event == ENTITY_REFERENCE) {
+                content.append(getText());
+            } else if (event == START_ELEMENT || event == END_DOCUMENT) {
+                throw new XMLStreamException("Element text expected",
+                        getLocation());
+            }
+            event = next();
+        }
+        return content.toString();
+    }
+
+}
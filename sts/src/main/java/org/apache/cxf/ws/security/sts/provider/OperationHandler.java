@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.bind.JAXBElement;
+
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
+
+/**
+ * Typed binding of a WS-Trust RequestType to one of the configured
+ * operation implementations. Handlers are created when an operation is set
+ * on {@link SecurityTokenServiceProvider}, so a request is dispatched with a
+ * single table lookup and an interface call.
+ */
+interface OperationHandler {
+
+    /**
+     * @return the response element to send back, or <code>null</code> if the
+     *         operation produced no response
+     */
+    JAXBElement<?> handle(RequestSecurityTokenType request);
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.sax.SAXSource;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+/**
+ * {@link SAXSource} that marshals a JAXB object with a pooled
+ * {@link Marshaller}. Unlike {@link javax.xml.bind.util.JAXBSource}, which
+ * creates its own marshaller up front, the marshaller is only borrowed while
+ * the source is being read and is returned to the pool right after.
+ * <p>
+ * Reading the source always produces SAX events for the registered content
+ * handler, so any consumer (handlers, logging, DOM conversion) sees the whole
+ * document. {@link StreamingResponseOutInterceptor} bypasses the SAX replay
+ * by calling {@link #writeTo(XMLStreamWriter)} itself.
+ */
+public class PooledJAXBSource extends SAXSource {
+
+    private static final String NAMESPACES_FEATURE = "http://xml.org/sax/features/namespaces";
+    private static final String NAMESPACE_PREFIXES_FEATURE =
+        "http://xml.org/sax/features/namespace-prefixes";
+    private static final String LEXICAL_HANDLER_PROPERTY =
+        "http://xml.org/sax/properties/lexical-handler";
+
+    private final JAXBMarshallerPool marshallerPool;
+    private final Object jaxbObject;
+
+    public PooledJAXBSource(JAXBMarshallerPool marshallerPool, Object jaxbObject) {
+        this.marshallerPool = marshallerPool;
+        this.jaxbObject = jaxbObject;
+        super.setXMLReader(new MarshallingReader());
+        // the input source is ignored, but transformers expect one
+        super.setInputSource(new InputSource());
+    }
+
+    public Object getJaxbObject() {
+        return jaxbObject;
+    }
+
+    public JAXBMarshallerPool getMarshallerPool() {
+        return marshallerPool;
+    }
+
+    /**
+     * Marshals the JAXB object as a fragment straight into the given writer,
+     * which must already be positioned where the element belongs.
+     */
+    public void writeTo(XMLStreamWriter streamWriter) throws JAXBException {
+        Marshaller marshaller = marshallerPool.borrowMarshaller();
+        try {
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            try {
+                marshaller.marshal(jaxbObject, streamWriter);
+            } finally {
+                marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.FALSE);
+            }
+        } finally {
+            marshallerPool.returnMarshaller(marshaller);
+        }
+    }
+
+    private class MarshallingReader implements XMLReader {
+
+        private ContentHandler contentHandler;
+        private DTDHandler dtdHandler;
+        private EntityResolver entityResolver;
+        private ErrorHandler errorHandler;
+        private Object lexicalHandler;
+        private boolean namespacePrefixes;
+
+        public boolean getFeature(String name) throws SAXNotRecognizedException {
+            if (NAMESPACES_FEATURE.equals(name)) {
+                return true;
+            }
+            if (NAMESPACE_PREFIXES_FEATURE.equals(name)) {
+                return namespacePrefixes;
+            }
+            throw new SAXNotRecognizedException(name);
+        }
+
+        public void setFeature(String name, boolean value) throws SAXNotRecognizedException {
+            if (NAMESPACES_FEATURE.equals(name) && value) {
+                return;
+            }
+            if (NAMESPACE_PREFIXES_FEATURE.equals(name)) {
+                namespacePrefixes = value;
+                return;
+            }
+            throw new SAXNotRecognizedException(name);
+        }
+
+        public Object getProperty(String name) throws SAXNotRecognizedException {
+            if (LEXICAL_HANDLER_PROPERTY.equals(name)) {
+                return lexicalHandler;
+            }
+            throw new SAXNotRecognizedException(name);
+        }
+
+        public void setProperty(String name, Object value) throws SAXNotRecognizedException {
+            if (LEXICAL_HANDLER_PROPERTY.equals(name)) {
+                lexicalHandler = value;
+                return;
+            }
+            throw new SAXNotRecognizedException(name);
+        }
+
+        public void setEntityResolver(EntityResolver resolver) {
+            this.entityResolver = resolver;
+        }
+
+        public EntityResolver getEntityResolver() {
+            return entityResolver;
+        }
+
+        public void setDTDHandler(DTDHandler handler) {
+            this.dtdHandler = handler;
+        }
+
+        public DTDHandler getDTDHandler() {
+            return dtdHandler;
+        }
+
+        public void setContentHandler(ContentHandler handler) {
+            this.contentHandler = handler;
+        }
+
+        public ContentHandler getContentHandler() {
+            return contentHandler;
+        }
+
+        public void setErrorHandler(ErrorHandler handler) {
+            this.errorHandler = handler;
+        }
+
+        public ErrorHandler getErrorHandler() {
+            return errorHandler;
+        }
+
+        public void parse(InputSource input) throws SAXException {
+            parse();
+        }
+
+        public void parse(String systemId) throws SAXException {
+            parse();
+        }
+
+        private void parse() throws SAXException {
+            Marshaller marshaller = null;
+            try {
+                marshaller = marshallerPool.borrowMarshaller();
+                marshaller.marshal(jaxbObject, contentHandler);
+            } catch (JAXBException e) {
+                SAXParseException se = new SAXParseException(e.getMessage(),
+                        null, null, -1, -1, e);
+                if (errorHandler != null) {
+                    errorHandler.fatalError(se);
+                }
+                throw se;
+            } finally {
+                marshallerPool.returnMarshaller(marshaller);
+            }
+        }
+    }
+
+}
@@ -24,13 +24,22 @@ import java.io.IOException;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
 import org.apache.ws.security.WSPasswordCallback;
 
+/**
+ * Takes the username token credentials from WSS4J and keeps them with the
+ * request (see {@link UsernameTokenCredentials}) for the issue operation,
+ * which checks them against the user store. The callback is shared by all
+ * requests; it keeps no state of its own. Outside of a CXF message there is
+ * no request to keep the credentials with, and they are dropped.
+ */
 public class ProviderPasswordCallback implements CallbackHandler {
 
-    private String username;
-    private String password;
-
     public void handle(Callback[] callbacks) throws IOException,
             UnsupportedCallbackException {
         for (int i = 0; i < callbacks.length; i++) {
@@ -38,8 +47,12 @@ public class ProviderPasswordCallback implements CallbackHandler {
 
             int usage = pc.getUsage();
             if (usage == WSPasswordCallback.USERNAME_TOKEN_UNKNOWN) {
-                username = pc.getIdentifier();
-                password = pc.getPassword();
+                Message message = PhaseInterceptorChain.getCurrentMessage();
+                if (message != null) {
+                    message.put(UsernameTokenCredentials.class,
+                            new UsernameTokenCredentials(pc.getIdentifier(),
+                                    pc.getPassword(), getRemoteAddress(message)));
+                }
             } else {
                 throw new UnsupportedCallbackException(callbacks[i],
                         "Unrecognized Callback");
@@ -47,16 +60,37 @@ public class ProviderPasswordCallback implements CallbackHandler {
         }
     }
 
+    /**
+     * Returns the username of the current request and clears it.
+     */
     public String resetUsername() {
-        String result = username;
-        username = null;
-        return result;
+        UsernameTokenCredentials credentials = UsernameTokenCredentials.getCurrent();
+        return credentials == null ? null : credentials.resetUsername();
     }
 
+    /**
+     * Returns the password of the current request and clears it.
+     */
     public String resetPassword() {
-        String result = password;
-        password = null;
-        return result;
+        UsernameTokenCredentials credentials = UsernameTokenCredentials.getCurrent();
+        return credentials == null ? null : credentials.resetPassword();
+    }
+
+    /**
+     * Returns the address of the client that sent the username token, or
+     * <code>null</code> if it is not known.
+     */
+    public String resetAddress() {
+        UsernameTokenCredentials credentials = UsernameTokenCredentials.getCurrent();
+        return credentials == null ? null : credentials.resetAddress();
+    }
+
+    private static String getRemoteAddress(Message message) {
+        Object request = message.get(AbstractHTTPDestination.HTTP_REQUEST);
+        if (request instanceof HttpServletRequest) {
+            return ((HttpServletRequest) request).getRemoteAddr();
+        }
+        return null;
     }
 
 }
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Logs at most a fixed number of messages per interval and counts the rest,
+ * so a burst of failing requests does not turn into a burst of log I/O. The
+ * exception stack trace is only written when debug logging is enabled.
+ */
+public class RateLimitedLog {
+
+    private final Log log;
+    private final int maxPerInterval;
+    private final long intervalMillis;
+
+    private final AtomicLong intervalStart = new AtomicLong();
+    private final AtomicInteger logged = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong totalSuppressed = new AtomicLong();
+
+    public RateLimitedLog(Log log, int maxPerInterval, long intervalMillis) {
+        this.log = log;
+        this.maxPerInterval = maxPerInterval;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void error(String message, Throwable t) {
+        if (!log.isErrorEnabled() || !acquire()) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.error(message, t);
+        } else {
+            log.error(message + ": " + t);
+        }
+    }
+
+    public void warn(String message, Throwable t) {
+        if (!log.isWarnEnabled() || !acquire()) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.warn(message, t);
+        } else {
+            log.warn(message + ": " + t);
+        }
+    }
+
+    public long getSuppressedCount() {
+        return totalSuppressed.get();
+    }
+
+    /**
+     * Returns whether a message may be logged in the current interval,
+     * reporting how many were suppressed in the previous one.
+     */
+    private boolean acquire() {
+        long now = System.currentTimeMillis();
+        long start = intervalStart.get();
+        if (now - start >= intervalMillis && intervalStart.compareAndSet(start, now)) {
+            logged.set(0);
+            long count = suppressed.getAndSet(0);
+            if (count > 0) {
+                log.warn(count + " similar messages were not logged");
+            }
+        }
+        if (logged.incrementAndGet() > maxPerInterval) {
+            suppressed.incrementAndGet();
+            totalSuppressed.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+}
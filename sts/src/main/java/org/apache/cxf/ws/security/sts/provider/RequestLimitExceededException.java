@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import org.apache.cxf.binding.soap.SoapFault;
+
+/**
+ * Thrown while a request is read once it exceeds one of the
+ * {@link RequestLimits}. Reported to the client as a wst:InvalidRequest
+ * fault. Like other rejections (see {@link STSException}) it does not
+ * capture a stack trace.
+ */
+public class RequestLimitExceededException extends SoapFault {
+
+    private static final long serialVersionUID = 3107325146853232417L;
+
+    public RequestLimitExceededException(String message) {
+        super(message, STSErrorCode.INVALID_REQUEST.getFaultCode());
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
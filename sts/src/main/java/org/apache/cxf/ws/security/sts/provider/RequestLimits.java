@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits applied to incoming requests while they are read from the wire, see
+ * {@link RequestSizeLimitInterceptor} and
+ * {@link RequestStructureLimitInterceptor}. A value of 0 or less disables
+ * the respective check.
+ */
+public class RequestLimits {
+
+    private long maxPayloadBytes = 256 * 1024;
+    private int maxElementDepth = 64;
+    private int maxAttributeCount = 32;
+    private int maxTextLength = 64 * 1024;
+    private int maxCertificateLength = 16 * 1024;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Maximum size of the encoded request, SOAP envelope included.
+     */
+    public long getMaxPayloadBytes() {
+        return maxPayloadBytes;
+    }
+
+    public void setMaxPayloadBytes(long maxPayloadBytes) {
+        this.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    /**
+     * Maximum element nesting, counted from the SOAP envelope.
+     */
+    public int getMaxElementDepth() {
+        return maxElementDepth;
+    }
+
+    public void setMaxElementDepth(int maxElementDepth) {
+        this.maxElementDepth = maxElementDepth;
+    }
+
+    /**
+     * Maximum number of attributes of a single element, namespace
+     * declarations not included.
+     */
+    public int getMaxAttributeCount() {
+        return maxAttributeCount;
+    }
+
+    public void setMaxAttributeCount(int maxAttributeCount) {
+        this.maxAttributeCount = maxAttributeCount;
+    }
+
+    /**
+     * Maximum number of characters of a single text node.
+     */
+    public int getMaxTextLength() {
+        return maxTextLength;
+    }
+
+    public void setMaxTextLength(int maxTextLength) {
+        this.maxTextLength = maxTextLength;
+    }
+
+    /**
+     * Maximum number of base64 characters of a ds:X509Certificate element.
+     */
+    public int getMaxCertificateLength() {
+        return maxCertificateLength;
+    }
+
+    public void setMaxCertificateLength(int maxCertificateLength) {
+        this.maxCertificateLength = maxCertificateLength;
+    }
+
+    /**
+     * Number of requests rejected because they exceeded a limit.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    RequestLimitExceededException exceeded(String limit, long value) {
+        rejected.incrementAndGet();
+        return new RequestLimitExceededException(limit + " exceeds the limit of "
+                + value);
+    }
+
+    static boolean isExceeded(long actual, long limit) {
+        return limit > 0 && actual > limit;
+    }
+
+}
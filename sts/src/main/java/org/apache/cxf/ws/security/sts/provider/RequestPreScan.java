@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Result of a streaming scan over the top level children of a
+ * RequestSecurityToken. Only wst:RequestType and wst:TokenType are read,
+ * everything else (UseKey, KeyInfo, ...) is skipped without being bound, so a
+ * request can be routed or rejected before it is unmarshalled.
+ */
+public final class RequestPreScan {
+
+    private static final String WSTRUST_13_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512";
+    private static final String REQUEST_TYPE = "RequestType";
+    private static final String TOKEN_TYPE = "TokenType";
+
+    private final String requestType;
+    private final String tokenType;
+
+    private RequestPreScan(String requestType, String tokenType) {
+        this.requestType = requestType;
+        this.tokenType = tokenType;
+    }
+
+    /**
+     * Reads the RequestType and TokenType of the request the reader is
+     * positioned on (or before). The scan stops as soon as both are known or
+     * the end of the root element is reached.
+     */
+    public static RequestPreScan scan(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            if (!reader.hasNext()) {
+                return new RequestPreScan(null, null);
+            }
+            reader.next();
+        }
+
+        String requestType = null;
+        String tokenType = null;
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                // getElementText() leaves the reader on the matching end
+                // element, so the depth is unchanged for the two we read
+                if (depth == 0 && isWsTrustElement(reader, REQUEST_TYPE)) {
+                    requestType = reader.getElementText().trim();
+                } else if (depth == 0 && isWsTrustElement(reader, TOKEN_TYPE)) {
+                    tokenType = reader.getElementText().trim();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            }
+            if (depth == 0 && requestType != null && tokenType != null) {
+                break;
+            }
+        }
+        return new RequestPreScan(requestType, tokenType);
+    }
+
+    private static boolean isWsTrustElement(XMLStreamReader reader,
+            String localName) {
+        return localName.equals(reader.getLocalName())
+                && WSTRUST_13_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.io.InputStream;
+
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Enforces {@link RequestLimits#getMaxPayloadBytes()} on the raw request
+ * stream. The request is never buffered for the check; reading fails with a
+ * {@link RequestLimitExceededException} once the limit is passed.
+ */
+public class RequestSizeLimitInterceptor extends AbstractPhaseInterceptor<Message> {
+
+    private final RequestLimits limits;
+
+    public RequestSizeLimitInterceptor(RequestLimits limits) {
+        super(Phase.RECEIVE);
+        this.limits = limits;
+    }
+
+    public void handleMessage(Message message) throws Fault {
+        InputStream is = message.getContent(InputStream.class);
+        if (is != null && limits.getMaxPayloadBytes() > 0) {
+            message.setContent(InputStream.class, new LimitedInputStream(is,
+                    limits));
+        }
+    }
+
+}
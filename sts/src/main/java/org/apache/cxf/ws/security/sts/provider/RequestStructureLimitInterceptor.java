@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.StaxInInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Wraps the request {@link XMLStreamReader} so that element depth, attribute
+ * count, text length and certificate size are checked against the
+ * {@link RequestLimits} while SAAJ, WSS4J and the databinding read the
+ * message.
+ */
+public class RequestStructureLimitInterceptor extends AbstractPhaseInterceptor<Message> {
+
+    private final RequestLimits limits;
+
+    public RequestStructureLimitInterceptor(RequestLimits limits) {
+        super(Phase.POST_STREAM);
+        addAfter(StaxInInterceptor.class.getName());
+        this.limits = limits;
+    }
+
+    public void handleMessage(Message message) throws Fault {
+        XMLStreamReader reader = message.getContent(XMLStreamReader.class);
+        if (reader != null) {
+            message.setContent(XMLStreamReader.class, new LimitingXMLStreamReader(
+                    reader, limits));
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Fault codes defined by WS-Trust 1.3 (section 11). The fault code QName and
+ * the default reason are built once per code.
+ */
+public enum STSErrorCode {
+
+    INVALID_REQUEST("InvalidRequest", "The request was invalid or malformed"),
+    FAILED_AUTHENTICATION("FailedAuthentication", "Authentication failed"),
+    REQUEST_FAILED("RequestFailed", "The specified request failed"),
+    INVALID_SECURITY_TOKEN("InvalidSecurityToken", "Security token has been revoked"),
+    AUTHENTICATION_BAD_ELEMENTS("AuthenticationBadElements", "Insufficient Digest Elements"),
+    BAD_REQUEST("BadRequest", "The specified RequestSecurityToken is not understood"),
+    EXPIRED_DATA("ExpiredData", "The request data is out-of-date"),
+    INVALID_TIME_RANGE("InvalidTimeRange", "The requested time range is invalid or unsupported"),
+    INVALID_SCOPE("InvalidScope", "Request scope is invalid or unsupported"),
+    RENEW_NEEDED("RenewNeeded", "A renewable security token has expired"),
+    UNABLE_TO_RENEW("UnableToRenew", "The requested renewal failed");
+
+    private static final String WSTRUST_13_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512";
+
+    private final QName faultCode;
+    private final String defaultReason;
+
+    STSErrorCode(String localName, String defaultReason) {
+        this.faultCode = new QName(WSTRUST_13_NAMESPACE, localName, "wst");
+        this.defaultReason = defaultReason;
+    }
+
+    public QName getFaultCode() {
+        return faultCode;
+    }
+
+    public String getLocalName() {
+        return faultCode.getLocalPart();
+    }
+
+    public String getDefaultReason() {
+        return defaultReason;
+    }
+
+}
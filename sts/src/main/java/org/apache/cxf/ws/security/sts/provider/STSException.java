@@ -20,18 +20,70 @@
 package org.apache.cxf.ws.security.sts.provider;
 
 /**
- *
+ * Failure of a WS-Trust operation, mapped to a fault by
+ * {@link STSFaultFactory}. Plain rejections of a request (wrong password,
+ * unknown token type, server busy, ...) are created without a stack trace,
+ * which makes them considerably cheaper; they say nothing about the server
+ * code. Failures keep capturing their stack trace.
  */
 public class STSException extends RuntimeException {
 
     private static final long serialVersionUID = -6540501345865299260L;
 
+    private final STSErrorCode errorCode;
+
+    private final boolean captureStackTrace;
+
     public STSException(String message) {
-        super(message);
+        this(message, STSErrorCode.REQUEST_FAILED);
     }
 
     public STSException(String message, Throwable e) {
+        this(message, e, STSErrorCode.REQUEST_FAILED);
+    }
+
+    public STSException(String message, STSErrorCode errorCode) {
+        this(message, null, errorCode, true);
+    }
+
+    public STSException(String message, Throwable e, STSErrorCode errorCode) {
+        this(message, e, errorCode, true);
+    }
+
+    /**
+     * @param captureStackTrace <code>false</code> if the exception only
+     *            rejects the request and its stack trace is of no interest
+     */
+    public STSException(String message, STSErrorCode errorCode,
+            boolean captureStackTrace) {
+        this(message, null, errorCode, captureStackTrace);
+    }
+
+    public STSException(String message, Throwable e, STSErrorCode errorCode,
+            boolean captureStackTrace) {
         super(message, e);
+        this.errorCode = errorCode;
+        this.captureStackTrace = captureStackTrace;
+        if (captureStackTrace) {
+            fillInStackTrace();
+        }
+    }
+
+    public STSErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isCaptureStackTrace() {
+        return captureStackTrace;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // the Throwable constructor calls this before the flag is set
+        if (captureStackTrace) {
+            return super.fillInStackTrace();
+        }
+        return this;
     }
 
 }
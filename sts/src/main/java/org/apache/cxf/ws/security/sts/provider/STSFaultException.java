@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.soap.SOAPFault;
+import javax.xml.ws.soap.SOAPFaultException;
+
+/**
+ * {@link SOAPFaultException} carrying a WS-Trust error code. It only
+ * transports the fault to the client, so no stack trace is captured.
+ */
+public class STSFaultException extends SOAPFaultException {
+
+    private static final long serialVersionUID = 2913566170377245211L;
+
+    private final STSErrorCode errorCode;
+
+    public STSFaultException(SOAPFault fault, STSErrorCode errorCode) {
+        super(fault);
+        this.errorCode = errorCode;
+    }
+
+    public STSErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
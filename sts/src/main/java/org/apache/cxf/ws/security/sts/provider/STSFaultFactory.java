@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.DetailEntry;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFactory;
+import javax.xml.soap.SOAPFault;
+
+/**
+ * Builds WS-Trust faults from {@link STSErrorCode}s. Fault code, detail names
+ * and default reasons are precomputed; only the SAAJ fault itself, which is
+ * not safe to share between requests, is created per failure. The
+ * ErrorCode detail carries the WS-Trust code rather than a stack frame.
+ */
+public class STSFaultFactory {
+
+    private static final String WSTRUST_13_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512";
+    private static final QName QNAME_DETAIL_FAULT = new QName(WSTRUST_13_NAMESPACE, "Fault", "ns");
+    private static final QName QNAME_DETAIL_ERROR_CODE = new QName(WSTRUST_13_NAMESPACE,
+            "ErrorCode", "ns");
+
+    private final SOAPFactory soapFactory;
+
+    public STSFaultFactory() throws SOAPException {
+        soapFactory = SOAPFactory.newInstance();
+    }
+
+    public STSFaultException createFault(STSErrorCode errorCode, String reason) throws SOAPException {
+        SOAPFault fault = soapFactory.createFault(
+                reason == null ? errorCode.getDefaultReason() : reason,
+                errorCode.getFaultCode());
+        DetailEntry detailEntry = fault.addDetail().addDetailEntry(
+                QNAME_DETAIL_FAULT);
+        detailEntry.addChildElement(QNAME_DETAIL_ERROR_CODE).setTextContent(
+                errorCode.getLocalName());
+        return new STSFaultException(fault, errorCode);
+    }
+
+    public STSFaultException createFault(Throwable cause) throws SOAPException {
+        return createFault(getErrorCode(cause), getReason(cause));
+    }
+
+    public static STSErrorCode getErrorCode(Throwable cause) {
+        if (cause instanceof STSException) {
+            return ((STSException) cause).getErrorCode();
+        }
+        return STSErrorCode.REQUEST_FAILED;
+    }
+
+    private static String getReason(Throwable cause) {
+        if (cause.getMessage() == null && cause.getCause() != null) {
+            return cause.getCause().getMessage();
+        }
+        return cause.getMessage();
+    }
+
+}
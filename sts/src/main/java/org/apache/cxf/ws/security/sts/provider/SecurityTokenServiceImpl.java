@@ -19,6 +19,16 @@
 
 package org.apache.cxf.ws.security.sts.provider;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.ws.security.sts.provider.metrics.OperationMetrics;
 import org.apache.cxf.ws.security.sts.provider.operation.CancelOperation;
 import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
 import org.apache.cxf.ws.security.sts.provider.operation.KeyExchangeTokenOperation;
@@ -31,6 +41,13 @@ import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseTy
 import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
 import org.oasis_open.docs.ws_sx.ws_trust._200512.wsdl.SecurityTokenService;
 
+/**
+ * Typed front end of the STS, implementing the SEI generated from the
+ * WS-Trust WSDL. CXF's JAXB databinding reads and writes the messages, so
+ * unlike {@link SecurityTokenServiceProvider} there is no manual
+ * (un)marshalling and dispatch; failures are reported with the same
+ * WS-Trust faults and recorded in the same {@link OperationMetrics}.
+ */
 @javax.jws.WebService(serviceName = "SecurityTokenServiceProvider", 
         portName = "SecurityTokenServiceSOAP", 
         targetNamespace = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/wsdl", 
@@ -38,12 +55,38 @@ import org.oasis_open.docs.ws_sx.ws_trust._200512.wsdl.SecurityTokenService;
         endpointInterface = "org.oasis_open.docs.ws_sx.ws_trust._200512.wsdl.SecurityTokenService")
 public class SecurityTokenServiceImpl implements SecurityTokenService {
 
+    private static final Log LOG = LogFactory
+            .getLog(SecurityTokenServiceImpl.class.getName());
+
+    private static final String WSTRUST_13_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512";
+    private static final String WSTRUST_REQUESTTYPE_ISSUE = WSTRUST_13_NAMESPACE
+            + "/Issue";
+    private static final String WSTRUST_REQUESTTYPE_CANCEL = WSTRUST_13_NAMESPACE
+            + "/Cancel";
+    private static final String WSTRUST_REQUESTTYPE_RENEW = WSTRUST_13_NAMESPACE
+            + "/Renew";
+    private static final String WSTRUST_REQUESTTYPE_VALIDATE = WSTRUST_13_NAMESPACE
+            + "/Validate";
+    private static final String WSTRUST_REQUESTTYPE_REQUESTCOLLECTION = WSTRUST_13_NAMESPACE
+            + "/RequestCollection";
+    private static final String WSTRUST_REQUESTTYPE_KEYEXCHANGETOKEN = WSTRUST_13_NAMESPACE
+            + "/KeyExchangeToken";
+    private static final int DEFAULT_ERROR_LOGS_PER_SECOND = 10;
+
     private CancelOperation cancelOperation;
     private IssueOperation issueOperation;
     private KeyExchangeTokenOperation keyExchangeTokenOperation;
     private RenewOperation renewOperation;
     private RequestCollectionOperation requestCollectionOperation;
     private ValidateOperation validateOperation;
+    private STSFaultFactory faultFactory;
+    private RateLimitedLog errorLog = new RateLimitedLog(LOG,
+            DEFAULT_ERROR_LOGS_PER_SECOND, 1000L);
+    private Map<String, OperationMetrics> operationMetrics = Collections.emptyMap();
+
+    public SecurityTokenServiceImpl() throws SOAPException {
+        faultFactory = new STSFaultFactory();
+    }
 
     public void setCancelOperation(CancelOperation cancelOperation) {
         this.cancelOperation = cancelOperation;
@@ -71,34 +114,139 @@ public class SecurityTokenServiceImpl implements SecurityTokenService {
         this.validateOperation = validateOperation;
     }
 
+    /**
+     * Limits how many failed requests per second are logged at error level.
+     */
+    public void setErrorLogsPerSecond(int errorLogsPerSecond) {
+        errorLog = new RateLimitedLog(LOG, errorLogsPerSecond, 1000L);
+    }
+
+    /**
+     * Sets the statistics to record, keyed by WS-Trust RequestType URI.
+     * Operations without an entry are not measured.
+     */
+    public void setOperationMetrics(Map<String, OperationMetrics> operationMetrics) {
+        this.operationMetrics = operationMetrics == null ? Collections
+                .<String, OperationMetrics> emptyMap()
+                : new ConcurrentHashMap<String, OperationMetrics>(operationMetrics);
+    }
+
     public RequestSecurityTokenResponseType validate(
-            RequestSecurityTokenType request) {
-        return validateOperation.validate(request);
+            final RequestSecurityTokenType request) {
+        return invoke(WSTRUST_REQUESTTYPE_VALIDATE,
+                new Invocation<RequestSecurityTokenResponseType>() {
+                    public RequestSecurityTokenResponseType call() {
+                        return validateOperation.validate(request);
+                    }
+                });
     }
 
     public RequestSecurityTokenResponseCollectionType requestCollection(
-            RequestSecurityTokenCollectionType requestCollection) {
-        return requestCollectionOperation.requestCollection(requestCollection);
+            final RequestSecurityTokenCollectionType requestCollection) {
+        return invoke(WSTRUST_REQUESTTYPE_REQUESTCOLLECTION,
+                new Invocation<RequestSecurityTokenResponseCollectionType>() {
+                    public RequestSecurityTokenResponseCollectionType call() {
+                        return requestCollectionOperation
+                                .requestCollection(requestCollection);
+                    }
+                });
     }
 
     public RequestSecurityTokenResponseType keyExchangeToken(
-            RequestSecurityTokenType request) {
-        return keyExchangeTokenOperation.keyExchangeToken(request);
+            final RequestSecurityTokenType request) {
+        return invoke(WSTRUST_REQUESTTYPE_KEYEXCHANGETOKEN,
+                new Invocation<RequestSecurityTokenResponseType>() {
+                    public RequestSecurityTokenResponseType call() {
+                        return keyExchangeTokenOperation.keyExchangeToken(request);
+                    }
+                });
     }
 
     public RequestSecurityTokenResponseCollectionType issue(
-            RequestSecurityTokenType request) {
-        return issueOperation.issue(request);
+            final RequestSecurityTokenType request) {
+        return invoke(WSTRUST_REQUESTTYPE_ISSUE,
+                new Invocation<RequestSecurityTokenResponseCollectionType>() {
+                    public RequestSecurityTokenResponseCollectionType call() {
+                        return issueOperation.issue(request);
+                    }
+                });
     }
 
     public RequestSecurityTokenResponseType cancel(
-            RequestSecurityTokenType request) {
-        return cancelOperation.cancel(request);
+            final RequestSecurityTokenType request) {
+        return invoke(WSTRUST_REQUESTTYPE_CANCEL,
+                new Invocation<RequestSecurityTokenResponseType>() {
+                    public RequestSecurityTokenResponseType call() {
+                        return cancelOperation.cancel(request);
+                    }
+                });
     }
 
     public RequestSecurityTokenResponseType renew(
-            RequestSecurityTokenType request) {
-        return renewOperation.renew(request);
+            final RequestSecurityTokenType request) {
+        return invoke(WSTRUST_REQUESTTYPE_RENEW,
+                new Invocation<RequestSecurityTokenResponseType>() {
+                    public RequestSecurityTokenResponseType call() {
+                        return renewOperation.renew(request);
+                    }
+                });
+    }
+
+    /**
+     * Runs the operation, recording its latency and outcome and reporting
+     * failures as WS-Trust faults.
+     */
+    private <T> T invoke(String requestType, Invocation<T> invocation) {
+        long start = System.nanoTime();
+        try {
+            T response = invocation.call();
+            succeeded(requestType, start);
+            return response;
+        } catch (RuntimeException e) {
+            throw failed(requestType, start, e);
+        }
+    }
+
+    private void succeeded(String requestType, long start) {
+        OperationMetrics metrics = operationMetrics.get(requestType);
+        if (metrics != null) {
+            long elapsed = System.nanoTime() - start;
+            // the databinding runs outside, all measured time is delegate time
+            metrics.recordDelegateLatency(elapsed);
+            metrics.recordSuccess(elapsed);
+        }
+    }
+
+    /**
+     * Records and logs the failure and converts it to a WS-Trust fault.
+     */
+    private RuntimeException failed(String requestType, long start,
+            RuntimeException e) {
+        OperationMetrics metrics = operationMetrics.get(requestType);
+        if (metrics != null) {
+            long elapsed = System.nanoTime() - start;
+            metrics.recordDelegateLatency(elapsed);
+            metrics.recordFailure(elapsed);
+        }
+        errorLog.error("Request failed", e);
+        if (e instanceof SOAPFaultException) {
+            // already a fault, including STSFaultException
+            return e;
+        }
+        try {
+            return faultFactory.createFault(e);
+        } catch (SOAPException e1) {
+            LOG.error(e1);
+            return e;
+        }
+    }
+
+    /**
+     * An operation call, like {@link java.util.concurrent.Callable} without
+     * checked exceptions.
+     */
+    private interface Invocation<T> {
+        T call();
     }
 
 }
@@ -19,31 +19,39 @@
 
 package org.apache.cxf.ws.security.sts.provider;
 
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.bind.util.JAXBSource;
-import javax.xml.namespace.QName;
-import javax.xml.soap.Detail;
-import javax.xml.soap.DetailEntry;
-import javax.xml.soap.SOAPElement;
 import javax.xml.soap.SOAPException;
-import javax.xml.soap.SOAPFactory;
-import javax.xml.soap.SOAPFault;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.ws.Provider;
 import javax.xml.ws.Service;
 import javax.xml.ws.ServiceMode;
 import javax.xml.ws.WebServiceProvider;
-import javax.xml.ws.soap.SOAPFaultException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.helpers.IOUtils;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.ws.security.sts.provider.metrics.OperationMetrics;
 import org.apache.cxf.ws.security.sts.provider.operation.CancelOperation;
 import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
 import org.apache.cxf.ws.security.sts.provider.operation.KeyExchangeTokenOperation;
@@ -52,6 +60,7 @@ import org.apache.cxf.ws.security.sts.provider.operation.RequestCollectionOperat
 import org.apache.cxf.ws.security.sts.provider.operation.ValidateOperation;
 import org.oasis_open.docs.ws_sx.ws_trust._200512.ObjectFactory;
 import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseType;
 import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
 
 @WebServiceProvider(serviceName = "SecurityTokenServiceProvider", 
@@ -65,7 +74,6 @@ public class SecurityTokenServiceProvider implements Provider<Source> {
             .getLog(SecurityTokenServiceProvider.class.getName());
 
     private static final String WSTRUST_13_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512";
-    private static final String WSTRUST_REQUESTTYPE_ELEMENTNAME = "RequestType";
     private static final String WSTRUST_REQUESTTYPE_ISSUE = WSTRUST_13_NAMESPACE
             + "/Issue";
     private static final String WSTRUST_REQUESTTYPE_CANCEL = WSTRUST_13_NAMESPACE
@@ -80,133 +88,361 @@ public class SecurityTokenServiceProvider implements Provider<Source> {
             + "/KeyExchangeToken";
 
     private static final String JAXB_CONTEXT_PATH = "org.oasis_open.docs.ws_sx.ws_trust._200512";
+    private static final ObjectFactory WS_TRUST_FACTORY = new ObjectFactory();
+    private static final int DEFAULT_ERROR_LOGS_PER_SECOND = 10;
+    private static final int DEFAULT_MARSHALLER_POOL_SIZE = Runtime
+            .getRuntime().availableProcessors() * 2;
+
     private JAXBContext jaxbContext;
-    private SOAPFactory soapFactory;
+    private JAXBMarshallerPool marshallerPool;
+    private STSFaultFactory faultFactory;
+    private RateLimitedLog errorLog = new RateLimitedLog(LOG,
+            DEFAULT_ERROR_LOGS_PER_SECOND, 1000L);
     private CancelOperation cancelOperation;
     private IssueOperation issueOperation;
     private KeyExchangeTokenOperation keyExchangeTokenOperation;
     private RenewOperation renewOperation;
     private RequestCollectionOperation requestCollectionOperation;
     private ValidateOperation validateOperation;
-    private Map<String, Object> operationMap = new HashMap<String, Object>();
+    private Map<String, OperationHandler> operationMap = 
+        new ConcurrentHashMap<String, OperationHandler>();
+    private Set<String> supportedTokenTypes;
+    private Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiters = 
+        Collections.emptyMap();
+    private Map<String, OperationMetrics> operationMetrics = Collections.emptyMap();
 
     public SecurityTokenServiceProvider() throws Exception {
         jaxbContext = JAXBContext.newInstance(JAXB_CONTEXT_PATH);
-        soapFactory = SOAPFactory.newInstance();
+        marshallerPool = new JAXBMarshallerPool(jaxbContext,
+                DEFAULT_MARSHALLER_POOL_SIZE);
+        faultFactory = new STSFaultFactory();
+    }
+
+    /**
+     * Limits how many failed requests per second are logged at error level.
+     */
+    public void setErrorLogsPerSecond(int errorLogsPerSecond) {
+        errorLog = new RateLimitedLog(LOG, errorLogsPerSecond, 1000L);
+    }
+
+    public RateLimitedLog getErrorLog() {
+        return errorLog;
+    }
+
+    /**
+     * Sets the maximum number of idle (un)marshallers kept for reuse.
+     */
+    public void setMarshallerPoolSize(int marshallerPoolSize) {
+        marshallerPool = new JAXBMarshallerPool(jaxbContext, marshallerPoolSize);
+    }
+
+    /**
+     * Restricts the token types accepted for Issue requests. Requests for
+     * other token types are rejected before the request is unmarshalled. If
+     * not set, every token type is passed on to the issue operation.
+     */
+    public void setSupportedTokenTypes(List<String> supportedTokenTypes) {
+        this.supportedTokenTypes = supportedTokenTypes == null ? null
+                : new HashSet<String>(supportedTokenTypes);
+    }
+
+    public JAXBMarshallerPool getMarshallerPool() {
+        return marshallerPool;
+    }
+
+    /**
+     * Sets the concurrency limiters, keyed by WS-Trust RequestType URI.
+     * Requests the limiter of their operation does not admit are rejected
+     * with a RequestFailed fault before they are unmarshalled. Operations
+     * without a limiter are not limited.
+     */
+    public void setConcurrencyLimiters(
+            Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiters) {
+        this.concurrencyLimiters = concurrencyLimiters == null ? Collections
+                .<String, AdaptiveConcurrencyLimiter> emptyMap()
+                : new ConcurrentHashMap<String, AdaptiveConcurrencyLimiter>(
+                        concurrencyLimiters);
+    }
+
+    public Map<String, AdaptiveConcurrencyLimiter> getConcurrencyLimiters() {
+        return Collections.unmodifiableMap(concurrencyLimiters);
+    }
+
+    /**
+     * Sets the statistics to record, keyed by WS-Trust RequestType URI.
+     * Operations without an entry are not measured.
+     */
+    public void setOperationMetrics(Map<String, OperationMetrics> operationMetrics) {
+        this.operationMetrics = operationMetrics == null ? Collections
+                .<String, OperationMetrics> emptyMap()
+                : new ConcurrentHashMap<String, OperationMetrics>(operationMetrics);
+    }
+
+    public Map<String, OperationMetrics> getOperationMetrics() {
+        return Collections.unmodifiableMap(operationMetrics);
     }
     
-    public void setCancelOperation(CancelOperation cancelOperation) {
+    public void setCancelOperation(final CancelOperation cancelOperation) {
         this.cancelOperation = cancelOperation;
-        operationMap.put(WSTRUST_REQUESTTYPE_CANCEL, cancelOperation);
+        operationMap.put(WSTRUST_REQUESTTYPE_CANCEL, new OperationHandler() {
+            @Override
+            public JAXBElement<?> handle(RequestSecurityTokenType request) {
+                return wrapResponse(cancelOperation.cancel(request));
+            }
+        });
     }
 
-    public void setIssueOperation(IssueOperation issueOperation) {
+    public void setIssueOperation(final IssueOperation issueOperation) {
         this.issueOperation = issueOperation;
-        operationMap.put(WSTRUST_REQUESTTYPE_ISSUE, issueOperation);
+        operationMap.put(WSTRUST_REQUESTTYPE_ISSUE, new OperationHandler() {
+            @Override
+            public JAXBElement<?> handle(RequestSecurityTokenType request) {
+                return wrapResponse(issueOperation.issue(request));
+            }
+        });
     }
 
     public void setKeyExchangeTokenOperation(
-            KeyExchangeTokenOperation keyExchangeTokenOperation) {
+            final KeyExchangeTokenOperation keyExchangeTokenOperation) {
         this.keyExchangeTokenOperation = keyExchangeTokenOperation;
         operationMap.put(WSTRUST_REQUESTTYPE_KEYEXCHANGETOKEN,
-                keyExchangeTokenOperation);
+                new OperationHandler() {
+                    @Override
+                    public JAXBElement<?> handle(RequestSecurityTokenType request) {
+                        return wrapResponse(keyExchangeTokenOperation
+                                .keyExchangeToken(request));
+                    }
+                });
     }
 
-    public void setRenewOperation(RenewOperation renewOperation) {
+    public void setRenewOperation(final RenewOperation renewOperation) {
         this.renewOperation = renewOperation;
-        operationMap.put(WSTRUST_REQUESTTYPE_RENEW, renewOperation);
+        operationMap.put(WSTRUST_REQUESTTYPE_RENEW, new OperationHandler() {
+            @Override
+            public JAXBElement<?> handle(RequestSecurityTokenType request) {
+                return wrapResponse(renewOperation.renew(request));
+            }
+        });
     }
 
+    /**
+     * RequestCollection takes a RequestSecurityTokenCollection rather than a
+     * single RequestSecurityToken, so it is not reachable through the
+     * RequestType dispatch of this payload provider.
+     */
     public void setRequestCollectionOperation(
             RequestCollectionOperation requestCollectionOperation) {
         this.requestCollectionOperation = requestCollectionOperation;
-        operationMap.put(WSTRUST_REQUESTTYPE_REQUESTCOLLECTION,
-                requestCollectionOperation);
     }
 
-    public void setValidateOperation(ValidateOperation validateOperation) {
+    public void setValidateOperation(final ValidateOperation validateOperation) {
         this.validateOperation = validateOperation;
-        operationMap.put(WSTRUST_REQUESTTYPE_VALIDATE, validateOperation);
+        operationMap.put(WSTRUST_REQUESTTYPE_VALIDATE, new OperationHandler() {
+            @Override
+            public JAXBElement<?> handle(RequestSecurityTokenType request) {
+                return wrapResponse(validateOperation.validate(request));
+            }
+        });
     }
 
-    
-
     public Source invoke(Source request) {
+        long start = System.nanoTime();
+        OperationMetrics metrics = null;
         Source response = null;
         try {
-            RequestSecurityTokenType rst = convertToJAXBObject(request);
-            Object operationImpl = null;
-            List<?> objectList = rst.getAny();
-            for (int i = 0; i < objectList.size(); i++) {
-                Object obj = objectList.get(i);
-                if (obj instanceof JAXBElement) {
-                    QName qname = ((JAXBElement<?>) obj).getName();
-                    if (qname.equals(new QName(WSTRUST_13_NAMESPACE,
-                            WSTRUST_REQUESTTYPE_ELEMENTNAME))) {
-                        operationImpl = operationMap.get(((JAXBElement<?>) obj)
-                                .getValue().toString());
-                        break;
-                    }
-
-                }
+            ReplayableSource payload = ReplayableSource.of(request);
+            RequestPreScan preScan = preScan(payload.newSource());
+            OperationHandler handler = findOperationHandler(preScan
+                    .getRequestType());
+            if (handler == null) {
+                throw new STSException(
+                        "Implementation for this operation not found.",
+                        STSErrorCode.INVALID_REQUEST, false);
+            }
+            metrics = operationMetrics.get(preScan.getRequestType());
+            if (WSTRUST_REQUESTTYPE_ISSUE.equals(preScan.getRequestType())
+                    && !isSupportedTokenType(preScan.getTokenType())) {
+                throw new STSException("Unsupported token type: "
+                        + preScan.getTokenType(), STSErrorCode.BAD_REQUEST,
+                        false);
             }
 
-            if (operationImpl == null) {
-                throw new Exception(
-                        "Implementation for this operation not found.");
+            AdaptiveConcurrencyLimiter limiter = concurrencyLimiters
+                    .get(preScan.getRequestType());
+            if (limiter != null && !limiter.acquire()) {
+                throw new STSException("Server busy, try again later",
+                        STSErrorCode.REQUEST_FAILED, false);
             }
-            Method[] methods = operationImpl.getClass().getMethods();
-            for (int x = 0; x < methods.length; x++) {
-                Class<?>[] paramClass = methods[x].getParameterTypes();
-                if (paramClass.length == 1
-                        && paramClass[0].equals(rst.getClass())) {
-                    RequestSecurityTokenResponseCollectionType tokenResponse = 
-                        (RequestSecurityTokenResponseCollectionType) methods[x]
-                            .invoke(operationImpl, rst);
-                    if (tokenResponse == null) {
-                        throw new Exception("Error in implementation class.");
+            JAXBElement<?> tokenResponse;
+            long admitted = System.nanoTime();
+            boolean success = false;
+            try {
+                RequestSecurityTokenType rst = convertToJAXBObject(payload
+                        .newSource());
+                long handlerStart = System.nanoTime();
+                try {
+                    tokenResponse = handler.handle(rst);
+                    success = tokenResponse != null;
+                } finally {
+                    if (metrics != null) {
+                        metrics.recordDelegateLatency(System.nanoTime()
+                                - handlerStart);
                     }
-                    
-                    response = new JAXBSource(jaxbContext, 
-                            new ObjectFactory().createRequestSecurityTokenResponseCollection(tokenResponse));
-                    return response;
+                }
+            } finally {
+                if (limiter != null) {
+                    limiter.release(System.nanoTime() - admitted, success);
                 }
             }
+            if (tokenResponse == null) {
+                throw new STSException("Error in implementation class.");
+            }
 
+            response = new PooledJAXBSource(marshallerPool, tokenResponse);
+            if (metrics != null) {
+                metrics.recordSuccess(System.nanoTime() - start);
+            }
+            return response;
 
         } catch (Exception e) {
-            LOG.error(e);
-            try {
-                SOAPFault fault = soapFactory.createFault();
-                if (e.getMessage() == null) {
-                    fault.setFaultString(e.getCause().getMessage());
-                } else {
-                    fault.setFaultString(e.getMessage());
+            if (metrics != null) {
+                metrics.recordFailure(System.nanoTime() - start);
+            }
+            response = fail(e);
+        }
+
+        return response;
+    }
+
+    /**
+     * Logs the failure and throws it back to the client as a WS-Trust fault.
+     * Returns <code>null</code> only if the fault itself cannot be built.
+     */
+    protected Source fail(Exception e) {
+        errorLog.error("Request failed", e);
+        try {
+            throw faultFactory.createFault(e);
+        } catch (SOAPException e1) {
+            LOG.error(e1);
+        }
+        return null;
+    }
+
+    OperationHandler findOperationHandler(String requestType) {
+        if (requestType == null) {
+            return null;
+        }
+        return operationMap.get(requestType);
+    }
+
+    private boolean isSupportedTokenType(String tokenType) {
+        return tokenType == null || supportedTokenTypes == null
+                || supportedTokenTypes.contains(tokenType);
+    }
+
+    private static RequestPreScan preScan(Source source) throws XMLStreamException {
+        XMLStreamReader reader = StaxUtils.createXMLStreamReader(source);
+        try {
+            return RequestPreScan.scan(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The payload is read twice, once by the pre-scan and once by JAXB. CXF
+     * hands over a DOMSource when SAAJ is in the chain, which can be read
+     * again as is. Any other source is kept as its serialized bytes (or
+     * characters); the pre-scan only parses up to the RequestType and
+     * TokenType, and no DOM is built.
+     */
+    private static final class ReplayableSource {
+
+        private final DOMSource dom;
+        private final byte[] bytes;
+        private final String chars;
+        private final String systemId;
+
+        private ReplayableSource(DOMSource dom, byte[] bytes, String chars,
+                String systemId) {
+            this.dom = dom;
+            this.bytes = bytes;
+            this.chars = chars;
+            this.systemId = systemId;
+        }
+
+        static ReplayableSource of(Source source) throws IOException,
+                XMLStreamException {
+            if (source instanceof DOMSource) {
+                return new ReplayableSource((DOMSource) source, null, null, null);
+            }
+            if (source instanceof StreamSource) {
+                StreamSource stream = (StreamSource) source;
+                InputStream in = stream.getInputStream();
+                if (in != null) {
+                    return new ReplayableSource(null, IOUtils
+                            .readBytesFromStream(in), null, stream.getSystemId());
                 }
-                Detail detail = fault.addDetail();
-                detail = fault.getDetail();
-                QName qName = new QName(WSTRUST_13_NAMESPACE, "Fault", "ns");
-                DetailEntry de = detail.addDetailEntry(qName);
-                qName = new QName(WSTRUST_13_NAMESPACE, "ErrorCode", "ns");
-                SOAPElement errorElement = de.addChildElement(qName);
-                StackTraceElement[] ste = e.getStackTrace();
-                errorElement.setTextContent(ste[0].toString());
-                throw new SOAPFaultException(fault);
-            } catch (SOAPException e1) {
-                LOG.error(e1);
+                Reader reader = stream.getReader();
+                if (reader != null) {
+                    return new ReplayableSource(null, null, IOUtils
+                            .toString(reader), stream.getSystemId());
+                }
+            }
+            // StAX or SAX sources are serialized event by event
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            XMLStreamReader reader = StaxUtils.createXMLStreamReader(source);
+            XMLStreamWriter writer = StaxUtils.createXMLStreamWriter(out, "UTF-8");
+            try {
+                StaxUtils.copy(reader, writer);
+                writer.flush();
+            } finally {
+                writer.close();
+                reader.close();
+            }
+            return new ReplayableSource(null, out.toByteArray(), null,
+                    source.getSystemId());
+        }
+
+        Source newSource() {
+            if (dom != null) {
+                return dom;
             }
+            StreamSource stream = bytes != null ? new StreamSource(
+                    new ByteArrayInputStream(bytes)) : new StreamSource(
+                    new StringReader(chars));
+            stream.setSystemId(systemId);
+            return stream;
+        }
+    }
 
+    private static JAXBElement<?> wrapResponse(
+            RequestSecurityTokenResponseCollectionType tokenResponse) {
+        if (tokenResponse == null) {
+            return null;
         }
+        return WS_TRUST_FACTORY
+                .createRequestSecurityTokenResponseCollection(tokenResponse);
+    }
 
-        return response;
+    private static JAXBElement<?> wrapResponse(
+            RequestSecurityTokenResponseType tokenResponse) {
+        if (tokenResponse == null) {
+            return null;
+        }
+        return WS_TRUST_FACTORY.createRequestSecurityTokenResponse(tokenResponse);
     }
 
     private RequestSecurityTokenType convertToJAXBObject(Source source) throws Exception {
         RequestSecurityTokenType request = null;
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-        JAXBElement<?> jaxbElement = (JAXBElement<?>) unmarshaller
-                .unmarshal(source);
-        request = (RequestSecurityTokenType) jaxbElement.getValue();
+        Unmarshaller unmarshaller = marshallerPool.borrowUnmarshaller();
+        try {
+            JAXBElement<?> jaxbElement = (JAXBElement<?>) unmarshaller
+                    .unmarshal(source);
+            request = (RequestSecurityTokenType) jaxbElement.getValue();
+        } finally {
+            marshallerPool.returnUnmarshaller(unmarshaller);
+        }
         return request;
     }
 
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.cxf.interceptor.BareOutInterceptor;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.WrappedOutInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Writes the {@link PooledJAXBSource} returned by
+ * {@link SecurityTokenServiceProvider} straight into the outgoing
+ * {@link XMLStreamWriter}. The RequestSecurityTokenResponse(Collection),
+ * including the signed assertion DOM, is marshalled directly into the message
+ * writer rather than being replayed as SAX events.
+ * <p>
+ * Runs in the marshal phase, after handlers and other interceptors had their
+ * chance to read the payload as a regular source, and marks the part as
+ * written so the databinding does not write it a second time.
+ */
+public class StreamingResponseOutInterceptor extends AbstractPhaseInterceptor<Message> {
+
+    public StreamingResponseOutInterceptor() {
+        super(Phase.MARSHAL);
+        addBefore(BareOutInterceptor.class.getName());
+        addBefore(WrappedOutInterceptor.class.getName());
+    }
+
+    public void handleMessage(Message message) throws Fault {
+        XMLStreamWriter writer = message.getContent(XMLStreamWriter.class);
+        MessageContentsList objs = MessageContentsList.getContentsList(message);
+        if (writer == null || objs == null) {
+            return;
+        }
+        for (int i = 0; i < objs.size(); i++) {
+            Object obj = objs.get(i);
+            if (obj instanceof PooledJAXBSource) {
+                try {
+                    ((PooledJAXBSource) obj).writeTo(writer);
+                } catch (JAXBException e) {
+                    throw new Fault(e);
+                }
+                objs.set(i, MessageContentsList.REMOVED_MARKER);
+            }
+        }
+    }
+
+}
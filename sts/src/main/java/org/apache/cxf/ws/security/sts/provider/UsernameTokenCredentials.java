@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+
+/**
+ * Username token credentials of one request. {@link ProviderPasswordCallback}
+ * attaches them to the CXF message while WSS4J processes the security
+ * header; the operation later finds them through {@link #getCurrent()}.
+ * Operations that run on another thread than the one that received the
+ * request (see {@link AsyncSecurityTokenServiceProvider}) get them bound to
+ * their thread for the duration of the operation.
+ * <p>
+ * An instance belongs to a single request and is handed from thread to
+ * thread with the request, so it needs no synchronization.
+ */
+public final class UsernameTokenCredentials {
+
+    private static final ThreadLocal<UsernameTokenCredentials> BOUND =
+        new ThreadLocal<UsernameTokenCredentials>();
+
+    private String username;
+    private String password;
+    private String address;
+
+    public UsernameTokenCredentials(String username, String password,
+            String address) {
+        this.username = username;
+        this.password = password;
+        this.address = address;
+    }
+
+    /**
+     * Returns the credentials of the request processed by the calling
+     * thread, or <code>null</code> if it did not contain a username token.
+     * The current CXF message wins over credentials bound to the thread.
+     */
+    public static UsernameTokenCredentials getCurrent() {
+        Message message = PhaseInterceptorChain.getCurrentMessage();
+        if (message != null) {
+            return message.get(UsernameTokenCredentials.class);
+        }
+        return BOUND.get();
+    }
+
+    /**
+     * Makes the credentials current for the calling thread until
+     * {@link #unbind()} is called, which must happen in a finally block.
+     */
+    static void bind(UsernameTokenCredentials credentials) {
+        if (credentials == null) {
+            BOUND.remove();
+        } else {
+            BOUND.set(credentials);
+        }
+    }
+
+    static void unbind() {
+        BOUND.remove();
+    }
+
+    public String resetUsername() {
+        String result = username;
+        username = null;
+        return result;
+    }
+
+    public String resetPassword() {
+        String result = password;
+        password = null;
+        return result;
+    }
+
+    public String resetAddress() {
+        String result = address;
+        address = null;
+        return result;
+    }
+
+}
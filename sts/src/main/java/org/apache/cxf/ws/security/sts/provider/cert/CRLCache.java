@@ -0,0 +1,789 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.ws.security.sts.provider.CircuitBreaker;
+import org.apache.cxf.ws.security.sts.provider.RateLimitedLog;
+import org.apache.cxf.ws.security.sts.provider.SingleFlight;
+import org.apache.cxf.ws.security.sts.provider.metrics.QueryMetrics;
+
+/**
+ * CRLs by distribution point URL. A CRL is downloaded once and used until
+ * its nextUpdate time (or for the default TTL if it has none). Only the
+ * {@link RevocationIndex} of a CRL is kept; large CRLs are indexed outside
+ * of the Java heap.
+ * <p>
+ * Shortly before a CRL expires, the next request that uses it triggers a
+ * refresh in the background and keeps using the current CRL meanwhile.
+ * Refreshes of HTTP distribution points are conditional
+ * (If-Modified-Since/If-None-Match), so an unchanged CRL is not downloaded
+ * again. If the refresh fails, the expired CRL is still served for the
+ * grace period while the refresh is retried; after that, requests download
+ * the CRL themselves and fail if that fails. Concurrent downloads of the
+ * same URL are coalesced.
+ * <p>
+ * A certificate may name several distribution points, e.g. HTTP mirrors and
+ * an LDAP directory publishing the same CRL. They are treated as
+ * alternatives: a usable cached CRL of any of them answers right away,
+ * otherwise they are downloaded concurrently and the first CRL that
+ * arrives is used. With a hedge delay, the next distribution point is only
+ * asked once the previous ones failed or did not answer within the delay.
+ * The whole download is bounded by a timeout.
+ * <p>
+ * Every distribution point has a {@link CircuitBreaker}. Once too many of
+ * its downloads fail it is not asked for a while, so requests fail (or fall
+ * back to another distribution point) right away instead of waiting for an
+ * endpoint that is down. What a request gets when there is no usable CRL is
+ * decided by the {@link RevocationPolicy}. For the fail-open window, a
+ * distribution point counts as failing from the start of its first failed
+ * download, or of a download that has not answered yet.
+ */
+public class CRLCache implements CRLCacheMBean {
+
+    private static final Log LOG = LogFactory.getLog(CRLCache.class.getName());
+    private static final int DEFAULT_FAIL_OPEN_LOGS_PER_SECOND = 1;
+
+    private long defaultTtlMillis = 3600000L;
+    private long refreshAheadMillis = 300000L;
+    private long retryIntervalMillis = 60000L;
+    private long gracePeriodMillis = 3600000L;
+    private int directThreshold = 50000;
+    private int mappedThreshold = 500000;
+    private File indexDirectory;
+    private long timeoutMillis = 30000L;
+    private long hedgeDelayMillis;
+    private double circuitFailureRateThreshold = 0.5;
+    private int circuitWindowSize = 20;
+    private int circuitMinimumCalls = 5;
+    private long circuitOpenMillis = 30000L;
+    private CRLFetcher fetcher = new CRLFetcher();
+    private QueryMetrics downloadMetrics = new QueryMetrics("crl");
+    private RateLimitedLog failOpenLog = new RateLimitedLog(LOG,
+            DEFAULT_FAIL_OPEN_LOGS_PER_SECOND, 1000L);
+
+    private final ConcurrentMap<String, Entry> entries =
+        new ConcurrentHashMap<String, Entry>();
+    private final SingleFlight<String, Entry> downloads = new SingleFlight<String, Entry>();
+    private final ConcurrentMap<String, CircuitBreaker> breakers =
+        new ConcurrentHashMap<String, CircuitBreaker>();
+    // start time of the running download of a URL
+    private final ConcurrentMap<String, Long> downloadingSince =
+        new ConcurrentHashMap<String, Long>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong softFailed = new AtomicLong();
+    private final AtomicLong failedOpen = new AtomicLong();
+
+    // guarded by this
+    private ExecutorService refresher;
+    private ExecutorService downloader;
+
+    /**
+     * Time a CRL without nextUpdate is used. Defaults to an hour.
+     */
+    public void setDefaultTtlMillis(long defaultTtlMillis) {
+        this.defaultTtlMillis = defaultTtlMillis;
+    }
+
+    /**
+     * How long before expiry a CRL is refreshed in the background. Defaults
+     * to 5 minutes.
+     */
+    public void setRefreshAheadMillis(long refreshAheadMillis) {
+        this.refreshAheadMillis = refreshAheadMillis;
+    }
+
+    /**
+     * Minimum time between two refreshes of a CRL, so an unavailable
+     * distribution point is not hit by every request. Defaults to a minute.
+     */
+    public void setRetryIntervalMillis(long retryIntervalMillis) {
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    /**
+     * Time after expiry an old CRL is still used while it can't be
+     * refreshed. 0 disables serving expired CRLs. Defaults to an hour.
+     */
+    public void setGracePeriodMillis(long gracePeriodMillis) {
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    public long getGracePeriodMillis() {
+        return gracePeriodMillis;
+    }
+
+    /**
+     * Number of revoked certificates from which a CRL is indexed in a
+     * direct buffer instead of on the heap. Defaults to 50000.
+     */
+    public void setDirectThreshold(int directThreshold) {
+        this.directThreshold = directThreshold;
+    }
+
+    /**
+     * Number of revoked certificates from which a CRL is indexed in a
+     * memory-mapped file. Defaults to 500000.
+     */
+    public void setMappedThreshold(int mappedThreshold) {
+        this.mappedThreshold = mappedThreshold;
+    }
+
+    /**
+     * Directory of memory-mapped indexes, defaults to the temporary
+     * directory. The files are deleted as soon as they are mapped.
+     */
+    public void setIndexDirectory(File indexDirectory) {
+        this.indexDirectory = indexDirectory;
+    }
+
+    /**
+     * Maximum time a request waits for a CRL from any of the distribution
+     * points of a certificate. Downloads still running when it expires are
+     * not aborted and fill the cache when they complete. Defaults to 30
+     * seconds.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Time after which the next distribution point is asked if the previous
+     * ones did not answer yet. 0 (the default) asks all distribution points
+     * at once.
+     */
+    public void setHedgeDelayMillis(long hedgeDelayMillis) {
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    /**
+     * Share of failed downloads among the recent ones at which a
+     * distribution point is no longer asked. Defaults to 0.5.
+     */
+    public void setCircuitFailureRateThreshold(double circuitFailureRateThreshold) {
+        this.circuitFailureRateThreshold = circuitFailureRateThreshold;
+    }
+
+    /**
+     * Number of recent downloads the failure rate is computed over. Defaults
+     * to 20.
+     */
+    public void setCircuitWindowSize(int circuitWindowSize) {
+        this.circuitWindowSize = circuitWindowSize;
+    }
+
+    /**
+     * Number of downloads needed before the failure rate is acted upon.
+     * Defaults to 5.
+     */
+    public void setCircuitMinimumCalls(int circuitMinimumCalls) {
+        this.circuitMinimumCalls = circuitMinimumCalls;
+    }
+
+    /**
+     * Time a failing distribution point is not asked before a single trial
+     * download is let through. Defaults to 30 seconds.
+     */
+    public void setCircuitOpenMillis(long circuitOpenMillis) {
+        this.circuitOpenMillis = circuitOpenMillis;
+    }
+
+    /**
+     * Limits how many certificates accepted without a CRL are logged per
+     * second. Defaults to 1.
+     */
+    public void setFailOpenLogsPerSecond(int failOpenLogsPerSecond) {
+        failOpenLog = new RateLimitedLog(LOG, failOpenLogsPerSecond, 1000L);
+    }
+
+    public void setFetcher(CRLFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    public void setDownloadMetrics(QueryMetrics downloadMetrics) {
+        this.downloadMetrics = downloadMetrics;
+    }
+
+    public QueryMetrics getDownloadMetrics() {
+        return downloadMetrics;
+    }
+
+    public synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        if (downloader != null) {
+            downloader.shutdownNow();
+            downloader = null;
+        }
+        fetcher.close();
+    }
+
+    /**
+     * Returns the revocation index of the CRL published at the URL.
+     *
+     * @throws CertificateVerificationException
+     *             - if there is no usable CRL and it can't be downloaded
+     */
+    public RevocationIndex getRevocationIndex(String url)
+        throws CertificateVerificationException {
+        RevocationIndex index = getCachedIndex(url);
+        if (index != null) {
+            return index;
+        }
+        misses.incrementAndGet();
+        return download(url, entries.get(url)).index;
+    }
+
+    /**
+     * Returns the revocation index of the CRL published at any of the
+     * distribution points, which are considered to publish the same CRL.
+     *
+     * @throws CertificateVerificationException
+     *             - if there is no usable CRL and none of the distribution
+     *             points delivers one in time
+     */
+    public RevocationIndex getRevocationIndex(List<String> urls)
+        throws CertificateVerificationException {
+        if (urls.isEmpty()) {
+            throw new CertificateVerificationException(
+                    "No CRL distribution point given");
+        }
+        if (urls.size() == 1) {
+            return getRevocationIndex(urls.get(0));
+        }
+        for (String url : urls) {
+            RevocationIndex index = getCachedIndex(url);
+            if (index != null) {
+                return index;
+            }
+        }
+        misses.incrementAndGet();
+        List<String> available = new ArrayList<String>(urls.size());
+        for (String url : urls) {
+            if (!getCircuitBreaker(url).isOpen()) {
+                available.add(url);
+            }
+        }
+        if (available.isEmpty()) {
+            rejected.incrementAndGet();
+            throw new CertificateVerificationException(
+                    "CRL distribution points are unavailable: " + urls);
+        }
+        if (available.size() == 1) {
+            String url = available.get(0);
+            return download(url, entries.get(url)).index;
+        }
+        return downloadFirst(available);
+    }
+
+    /**
+     * Like {@link #getRevocationIndex(List)}, applying the policy if no CRL
+     * can be obtained.
+     *
+     * @return the revocation index, or <code>null</code> if the revocation
+     *         status is unknown and the policy accepts the certificate anyway
+     * @throws CertificateVerificationException
+     *             - if no CRL can be obtained and the policy rejects the
+     *             certificate
+     */
+    public RevocationIndex getRevocationIndex(List<String> urls,
+            RevocationPolicy policy, long failOpenWindowMillis)
+        throws CertificateVerificationException {
+        try {
+            return getRevocationIndex(urls);
+        } catch (CertificateVerificationException e) {
+            if (policy == RevocationPolicy.HARD_FAIL) {
+                throw e;
+            }
+            RevocationIndex lastKnown = getLastKnownIndex(urls);
+            if (lastKnown != null) {
+                softFailed.incrementAndGet();
+                return lastKnown;
+            }
+            if (policy == RevocationPolicy.FAIL_OPEN
+                    && System.currentTimeMillis() < getFailingSince(urls)
+                            + failOpenWindowMillis) {
+                failedOpen.incrementAndGet();
+                failOpenLog.warn("No CRL available from " + urls
+                        + ", accepting the certificate", e);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Number of distribution points asked because the previous ones did not
+     * answer within the hedge delay.
+     */
+    public long getHedgedCount() {
+        return hedged.get();
+    }
+
+    /**
+     * Number of requests that got no CRL within the timeout.
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Number of downloads rejected because the distribution point failed
+     * too often recently.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of requests served with an outdated CRL under
+     * {@link RevocationPolicy#SOFT_FAIL} or
+     * {@link RevocationPolicy#FAIL_OPEN}.
+     */
+    public long getSoftFailCount() {
+        return softFailed.get();
+    }
+
+    /**
+     * Number of certificates accepted without a CRL under
+     * {@link RevocationPolicy#FAIL_OPEN}.
+     */
+    public long getFailOpenCount() {
+        return failedOpen.get();
+    }
+
+    /**
+     * Number of distribution points that are currently not asked, or only
+     * by a trial download.
+     */
+    public int getOpenCircuitCount() {
+        int open = 0;
+        for (CircuitBreaker breaker : breakers.values()) {
+            if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Number of open connections to LDAP distribution points.
+     */
+    public int getLdapConnectionCount() {
+        return fetcher.getLdapConnectionCount();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailures.get();
+    }
+
+    public long getStaleServedCount() {
+        return staleServed.get();
+    }
+
+    /**
+     * Time since the least recently confirmed CRL was downloaded or
+     * confirmed unchanged, 0 if the cache is empty.
+     */
+    public long getOldestEntryAgeMillis() {
+        long oldest = Long.MAX_VALUE;
+        for (Entry entry : entries.values()) {
+            oldest = Math.min(oldest, entry.fetchedAt);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    /**
+     * Number of revoked certificates in all cached CRLs.
+     */
+    public long getRevokedCount() {
+        long revoked = 0;
+        for (Entry entry : entries.values()) {
+            revoked += entry.index.getSize();
+        }
+        return revoked;
+    }
+
+    /**
+     * Bytes taken by the revocation indexes outside of the Java heap.
+     */
+    public long getOffHeapByteCount() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.index.getStorage() != RevocationIndex.Storage.HEAP) {
+                bytes += entry.index.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Number of cached CRLs past their nextUpdate time.
+     */
+    public int getExpiredCount() {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.expiresAt <= now) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the cached index of the URL if it may be used, refreshing it
+     * in the background when it is due.
+     */
+    private RevocationIndex getCachedIndex(String url) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (now < entry.expiresAt) {
+            hits.incrementAndGet();
+        } else if (now < entry.expiresAt + gracePeriodMillis) {
+            staleServed.incrementAndGet();
+        } else {
+            return null;
+        }
+        if (now >= entry.nextRefreshAt) {
+            refreshInBackground(url, entry);
+        }
+        return entry.index;
+    }
+
+    /**
+     * Returns the most recently downloaded index of any of the URLs,
+     * regardless of its age.
+     */
+    private RevocationIndex getLastKnownIndex(List<String> urls) {
+        Entry newest = null;
+        for (String url : urls) {
+            Entry entry = entries.get(url);
+            if (entry != null && (newest == null || entry.fetchedAt > newest.fetchedAt)) {
+                newest = entry;
+            }
+        }
+        return newest == null ? null : newest.index;
+    }
+
+    /**
+     * Returns since when the URLs have been failing: the earliest start of
+     * a failed download or of one that did not answer yet, now if there is
+     * none.
+     */
+    private long getFailingSince(List<String> urls) {
+        long since = System.currentTimeMillis();
+        for (String url : urls) {
+            long failingSince = getCircuitBreaker(url).getFailingSince();
+            if (failingSince != 0) {
+                since = Math.min(since, failingSince);
+            }
+            Long downloading = downloadingSince.get(url);
+            if (downloading != null) {
+                since = Math.min(since, downloading);
+            }
+        }
+        return since;
+    }
+
+    private CircuitBreaker getCircuitBreaker(String url) {
+        CircuitBreaker breaker = breakers.get(url);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(circuitFailureRateThreshold,
+                    circuitWindowSize, circuitMinimumCalls, circuitOpenMillis);
+            CircuitBreaker existing = breakers.putIfAbsent(url, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    private RevocationIndex downloadFirst(List<String> urls)
+        throws CertificateVerificationException {
+        CompletionService<Entry> completion = new ExecutorCompletionService<Entry>(
+                getDownloader());
+        Iterator<String> pending = urls.iterator();
+        int running = 0;
+        Throwable lastFailure = null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            do {
+                submit(completion, pending.next());
+                running++;
+            } while (hedgeDelayMillis <= 0 && pending.hasNext());
+
+            while (running > 0 || pending.hasNext()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                if (running == 0) {
+                    // all asked distribution points failed, go on right away
+                    submit(completion, pending.next());
+                    running++;
+                    continue;
+                }
+                long wait = remaining;
+                if (pending.hasNext()) {
+                    wait = Math.min(wait, TimeUnit.MILLISECONDS.toNanos(hedgeDelayMillis));
+                }
+                Future<Entry> done = completion.poll(wait, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (pending.hasNext() && deadline - System.nanoTime() > 0) {
+                        hedged.incrementAndGet();
+                        submit(completion, pending.next());
+                        running++;
+                    }
+                    continue;
+                }
+                running--;
+                try {
+                    return done.get().index;
+                } catch (ExecutionException e) {
+                    lastFailure = e.getCause();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CertificateVerificationException(
+                    "Interrupted while downloading CRL from: " + urls, e);
+        }
+        if (running > 0) {
+            timeouts.incrementAndGet();
+            throw new CertificateVerificationException("No CRL within "
+                    + timeoutMillis + " ms from: " + urls, lastFailure);
+        }
+        throw new CertificateVerificationException(
+                "Can not download CRL from: " + urls, lastFailure);
+    }
+
+    private void submit(CompletionService<Entry> completion, final String url) {
+        completion.submit(new Callable<Entry>() {
+            public Entry call() throws CertificateVerificationException {
+                return download(url, entries.get(url));
+            }
+        });
+    }
+
+    private void refreshInBackground(final String url, final Entry entry) {
+        if (getCircuitBreaker(url).isOpen()
+                || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getRefresher().execute(new Runnable() {
+                public void run() {
+                    try {
+                        download(url, entry);
+                    } catch (CertificateVerificationException e) {
+                        LOG.warn("Can't refresh CRL from " + url
+                                + ", using the previous one", e);
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // stopped
+            entry.refreshing.set(false);
+        }
+    }
+
+    private Entry download(final String url, final Entry previous)
+        throws CertificateVerificationException {
+        try {
+            return downloads.execute(url, new Callable<Entry>() {
+                public Entry call() throws Exception {
+                    return doDownload(url, previous);
+                }
+            });
+        } catch (IllegalStateException e) {
+            // a checked exception of the download
+            throw new CertificateVerificationException(
+                    "Can not download CRL from: " + url, e.getCause());
+        }
+    }
+
+    private Entry doDownload(String url, Entry previous) throws Exception {
+        CircuitBreaker breaker = getCircuitBreaker(url);
+        if (!breaker.allowRequest()) {
+            rejected.incrementAndGet();
+            throw new CertificateVerificationException(
+                    "CRL distribution point is unavailable: " + url);
+        }
+        long start = System.nanoTime();
+        long startedAt = System.currentTimeMillis();
+        // downloads of a URL are coalesced, so this is the only one
+        downloadingSince.put(url, startedAt);
+        Entry entry;
+        try {
+            CRLDownload download = previous == null ? fetcher.fetch(url, null, null)
+                    : fetcher.fetch(url, previous.lastModified, previous.etag);
+            if (download == null) {
+                notModified.incrementAndGet();
+                entry = new Entry(previous.index, previous.lastModified,
+                        previous.etag, System.currentTimeMillis());
+            } else {
+                // the CRL itself is garbage once it is indexed
+                entry = new Entry(index(download.getCRL()),
+                        download.getLastModified(), download.getETag(), System
+                                .currentTimeMillis());
+            }
+        } catch (Exception e) {
+            breaker.recordFailure(startedAt);
+            downloadMetrics.recordFailure(System.nanoTime() - start);
+            if (previous != null) {
+                refreshFailures.incrementAndGet();
+                previous.nextRefreshAt = System.currentTimeMillis()
+                        + retryIntervalMillis;
+            }
+            throw e;
+        } finally {
+            downloadingSince.remove(url);
+        }
+        breaker.recordSuccess();
+        downloadMetrics.recordSuccess(System.nanoTime() - start);
+        entries.put(url, entry);
+        return entry;
+    }
+
+    private RevocationIndex index(X509CRL crl) throws IOException {
+        Set<?> revoked = crl.getRevokedCertificates();
+        int count = revoked == null ? 0 : revoked.size();
+        RevocationIndex.Storage storage = RevocationIndex.Storage.HEAP;
+        if (count >= mappedThreshold) {
+            storage = RevocationIndex.Storage.MAPPED;
+        } else if (count >= directThreshold) {
+            storage = RevocationIndex.Storage.DIRECT;
+        }
+        return RevocationIndex.create(crl, storage, indexDirectory);
+    }
+
+    private synchronized ExecutorService getDownloader() {
+        if (downloader == null) {
+            downloader = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CRLCache downloader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return downloader;
+    }
+
+    private synchronized ExecutorService getRefresher() {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CRLCache refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return refresher;
+    }
+
+    private final class Entry {
+
+        private final RevocationIndex index;
+        private final String lastModified;
+        private final String etag;
+        private final long fetchedAt;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long nextRefreshAt;
+
+        Entry(RevocationIndex index, String lastModified, String etag,
+                long fetchedAt) {
+            this.index = index;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.fetchedAt = fetchedAt;
+            Date nextUpdate = index.getNextUpdate();
+            expiresAt = nextUpdate == null ? fetchedAt + defaultTtlMillis
+                    : nextUpdate.getTime();
+            // a CRL that is (nearly) expired when it is downloaded is
+            // refreshed at the retry interval, not on every request
+            nextRefreshAt = Math.max(expiresAt - refreshAheadMillis, fetchedAt
+                    + retryIntervalMillis);
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.security.cert.X509CRL;
+
+/**
+ * A downloaded CRL together with the HTTP validators needed to ask the
+ * server whether it changed.
+ */
+public final class CRLDownload {
+
+    private final X509CRL crl;
+    private final String lastModified;
+    private final String etag;
+
+    public CRLDownload(X509CRL crl, String lastModified, String etag) {
+        this.crl = crl;
+        this.lastModified = lastModified;
+        this.etag = etag;
+    }
+
+    public X509CRL getCRL() {
+        return crl;
+    }
+
+    /**
+     * Value of the Last-Modified header, or <code>null</code>.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Value of the ETag header, or <code>null</code>.
+     */
+    public String getETag() {
+        return etag;
+    }
+
+}
@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.CommunicationException;
+import javax.naming.CompositeName;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.cxf.ws.security.sts.provider.ldap.LdapContextPool;
+
+/**
+ * Downloads CRLs from HTTP, HTTPS, FTP and LDAP distribution points. HTTP
+ * downloads are conditional when a previous download is given, so an
+ * unchanged CRL is neither transferred nor parsed again.
+ * <p>
+ * LDAP downloads go over an {@link LdapContextPool} per directory server,
+ * shared by all distribution points on that server. {@link #close()}
+ * closes the pooled connections.
+ */
+public class CRLFetcher {
+
+    private static final String LDAP_SCHEME = "ldap://";
+    private static final String CRL_ATTRIBUTE = "certificateRevocationList;binary";
+
+    private int connectTimeoutMillis = 10000;
+    private int readTimeoutMillis = 30000;
+    private int ldapPoolSize = 4;
+    private long ldapMaxIdleMillis = 60000L;
+    private long ldapMaxWaitMillis = 5000L;
+
+    private final ConcurrentMap<String, LdapContextPool> ldapPools =
+        new ConcurrentHashMap<String, LdapContextPool>();
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Maximum number of connections to one LDAP server. Defaults to 4.
+     */
+    public void setLdapPoolSize(int ldapPoolSize) {
+        this.ldapPoolSize = ldapPoolSize;
+    }
+
+    /**
+     * Time after which an idle LDAP connection is closed. Defaults to a
+     * minute.
+     */
+    public void setLdapMaxIdleMillis(long ldapMaxIdleMillis) {
+        this.ldapMaxIdleMillis = ldapMaxIdleMillis;
+    }
+
+    /**
+     * Maximum time to wait for a pooled LDAP connection. Defaults to 5
+     * seconds.
+     */
+    public void setLdapMaxWaitMillis(long ldapMaxWaitMillis) {
+        this.ldapMaxWaitMillis = ldapMaxWaitMillis;
+    }
+
+    /**
+     * Closes the pooled LDAP connections. Connections in use are closed
+     * when their download completes.
+     */
+    public void close() {
+        for (LdapContextPool pool : ldapPools.values()) {
+            pool.close();
+        }
+        ldapPools.clear();
+    }
+
+    /**
+     * Number of open connections to LDAP servers.
+     */
+    public int getLdapConnectionCount() {
+        int count = 0;
+        for (LdapContextPool pool : ldapPools.values()) {
+            count += pool.getOpenCount();
+        }
+        return count;
+    }
+
+    /**
+     * Downloads the CRL from the URL. For HTTP URLs the download is
+     * conditional if validators of the previous download are given.
+     *
+     * @param lastModified
+     *            - Last-Modified header of the previous download, or
+     *            <code>null</code>
+     * @param etag
+     *            - ETag header of the previous download, or <code>null</code>
+     * @return the download, or <code>null</code> if the server reports that
+     *         the CRL did not change
+     */
+    public CRLDownload fetch(String crlURL, String lastModified, String etag)
+        throws IOException, GeneralSecurityException, NamingException,
+        CertificateVerificationException {
+        if (crlURL.startsWith("http://") || crlURL.startsWith("https://")) {
+            return fetchFromHttp(crlURL, lastModified, etag);
+        } else if (crlURL.startsWith("ftp://")) {
+            return new CRLDownload(fetchFromFtp(crlURL), null, null);
+        } else if (crlURL.startsWith(LDAP_SCHEME)) {
+            return new CRLDownload(fetchFromLDAP(crlURL), null, null);
+        } else {
+            throw new CertificateVerificationException(
+                    "Can not download CRL from certificate "
+                            + "distribution point: " + crlURL);
+        }
+    }
+
+    private CRLDownload fetchFromHttp(String crlURL, String lastModified,
+            String etag) throws IOException, GeneralSecurityException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(crlURL)
+                .openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED
+                && (lastModified != null || etag != null)) {
+            close(connection.getInputStream());
+            return null;
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            // read the error body so the connection can be reused
+            close(connection.getErrorStream());
+            throw new IOException("HTTP " + status + " downloading CRL from "
+                    + crlURL);
+        }
+        X509CRL crl = parse(connection.getInputStream());
+        return new CRLDownload(crl, connection.getHeaderField("Last-Modified"),
+                connection.getHeaderField("ETag"));
+    }
+
+    private X509CRL fetchFromFtp(String crlURL) throws IOException,
+            GeneralSecurityException {
+        URLConnection connection = new URL(crlURL).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        return parse(connection.getInputStream());
+    }
+
+    /**
+     * Downloads a CRL from given LDAP url, e.g.
+     * ldap://ldap.infonotary.com/dc=identity-ca,dc=infonotary,dc=com
+     */
+    private X509CRL fetchFromLDAP(String ldapURL) throws NamingException,
+            GeneralSecurityException, CertificateVerificationException {
+        // ldap://host:port/dn, the DN is percent-encoded
+        int slash = ldapURL.indexOf('/', LDAP_SCHEME.length());
+        String server = slash < 0 ? ldapURL : ldapURL.substring(0, slash);
+        String dn = "";
+        if (slash >= 0) {
+            int query = ldapURL.indexOf('?', slash);
+            dn = decode(query < 0 ? ldapURL.substring(slash + 1) : ldapURL
+                    .substring(slash + 1, query));
+        }
+
+        LdapContextPool pool = getLdapPool(server);
+        byte[] val;
+        try {
+            val = readCrl(pool, dn);
+        } catch (CommunicationException e) {
+            // the pooled connection was dropped, e.g. by a firewall
+            val = readCrl(pool, dn);
+        }
+        if ((val == null) || (val.length == 0)) {
+            throw new CertificateVerificationException(
+                    "Can not download CRL from: " + ldapURL);
+        }
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        return (X509CRL) cf.generateCRL(new ByteArrayInputStream(val));
+    }
+
+    private static byte[] readCrl(LdapContextPool pool, String dn) throws NamingException {
+        LdapContext ctx = pool.borrow(null, null);
+        boolean broken = true;
+        try {
+            Attributes avals = ctx.getAttributes(new CompositeName().add(dn),
+                    new String[] {CRL_ATTRIBUTE});
+            Attribute aval = avals.get(CRL_ATTRIBUTE);
+            broken = false;
+            return aval == null ? null : (byte[]) aval.get();
+        } catch (NamingException e) {
+            // e.g. a missing entry leaves the connection usable
+            broken = e instanceof CommunicationException;
+            throw e;
+        } finally {
+            if (broken) {
+                pool.invalidate(ctx);
+            } else {
+                pool.release(ctx);
+            }
+        }
+    }
+
+    private LdapContextPool getLdapPool(String server) {
+        String key = server.toLowerCase();
+        if (key.lastIndexOf(':') < LDAP_SCHEME.length() || key.endsWith("]")) {
+            key = key + ":389";
+        }
+        LdapContextPool pool = ldapPools.get(key);
+        if (pool == null) {
+            pool = new LdapContextPool(key, ldapPoolSize);
+            pool.setConnectTimeoutMillis(connectTimeoutMillis);
+            pool.setReadTimeoutMillis(readTimeoutMillis);
+            pool.setMaxWaitMillis(ldapMaxWaitMillis);
+            pool.setMaxIdleMillis(ldapMaxIdleMillis);
+            LdapContextPool existing = ldapPools.putIfAbsent(key, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Decodes %XX escapes; unlike URLDecoder a '+' is kept, it is part of
+     * multi-valued RDNs.
+     */
+    private static String decode(String encoded) throws CertificateVerificationException {
+        if (encoded.indexOf('%') < 0) {
+            return encoded;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoded.length());
+        try {
+            for (int i = 0; i < encoded.length(); i++) {
+                char c = encoded.charAt(i);
+                if (c == '%' && i + 2 < encoded.length()) {
+                    bytes.write(Integer.parseInt(encoded.substring(i + 1, i + 3), 16));
+                    i += 2;
+                } else {
+                    bytes.write(String.valueOf(c).getBytes("UTF-8"));
+                }
+            }
+            return bytes.toString("UTF-8");
+        } catch (NumberFormatException e) {
+            throw new CertificateVerificationException("Invalid escape in LDAP URL: "
+                    + encoded, e);
+        } catch (IOException e) {
+            // every Java platform is required to support UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static X509CRL parse(InputStream is) throws IOException,
+            GeneralSecurityException {
+        try {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            return (X509CRL) cf.generateCRL(new BufferedInputStream(is));
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void close(InputStream is) throws IOException {
+        if (is != null) {
+            byte[] buffer = new byte[1024];
+            while (is.read(buffer) != -1) {
+                // drain
+            }
+            is.close();
+        }
+    }
+
+}
@@ -21,26 +21,12 @@ package org.apache.cxf.ws.security.sts.provider.cert;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.security.cert.CRLException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.NamingException;
-import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
-
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.DERIA5String;
 import org.bouncycastle.asn1.DERObject;
@@ -54,6 +40,9 @@ import org.bouncycastle.asn1.x509.X509Extensions;
 
 public final class CRLVerifier {
 
+    // shares the LDAP connections of all downloads without a cache
+    private static final CRLFetcher FETCHER = new CRLFetcher();
+
     /**
      * Extracts the CRL distribution points from the certificate (if available)
      * and checks the certificate revocation status against the CRLs coming from
@@ -70,11 +59,47 @@ public final class CRLVerifier {
     }
     
     public static void verifyCertificateCRLs(X509Certificate cert) throws CertificateVerificationException {
+        verifyCertificateCRLs(cert, null);
+    }
+
+    /**
+     * Like {@link #verifyCertificateCRLs(X509Certificate)}, looking the
+     * certificate up in the revocation indexes of the CRL cache. With a
+     * cache the distribution points are taken as mirrors of the same CRL and
+     * the first one that answers is used, see {@link CRLCache}.
+     * 
+     * @param crlCache
+     *            the CRL cache, may be <code>null</code>
+     */
+    public static void verifyCertificateCRLs(X509Certificate cert, CRLCache crlCache)
+        throws CertificateVerificationException {
+        verifyCertificateCRLs(cert, crlCache, RevocationPolicy.HARD_FAIL, 0);
+    }
+
+    /**
+     * Like {@link #verifyCertificateCRLs(X509Certificate, CRLCache)},
+     * applying the revocation policy if no CRL can be obtained. Without a
+     * cache the policy is always {@link RevocationPolicy#HARD_FAIL}.
+     */
+    public static void verifyCertificateCRLs(X509Certificate cert,
+            CRLCache crlCache, RevocationPolicy policy, long failOpenWindowMillis)
+        throws CertificateVerificationException {
         try {
             List<String> crlDistPoints = getCrlDistributionPoints(cert);
+            if (crlCache != null) {
+                if (crlDistPoints.isEmpty()) {
+                    return;
+                }
+                RevocationIndex index = crlCache.getRevocationIndex(
+                        crlDistPoints, policy, failOpenWindowMillis);
+                if (index != null && index.isRevoked(cert)) {
+                    throw new CertificateVerificationException(
+                            "The certificate is revoked by CRL: " + crlDistPoints);
+                }
+                return;
+            }
             for (String crlDP : crlDistPoints) {
-                X509CRL crl = downloadCRL(crlDP);
-                if (crl.isRevoked(cert)) {
+                if (downloadCRL(crlDP).isRevoked(cert)) {
                     throw new CertificateVerificationException(
                             "The certificate is revoked by CRL: " + crlDP);
                 }
@@ -94,66 +119,8 @@ public final class CRLVerifier {
      * Downloads CRL from given URL. Supports http, https, ftp and ldap based
      * URLs.
      */
-    private static X509CRL downloadCRL(String crlURL) throws IOException,
-            CertificateException, CRLException,
-            CertificateVerificationException, NamingException {
-        if (crlURL.startsWith("http://") || crlURL.startsWith("https://")
-                || crlURL.startsWith("ftp://")) {
-            X509CRL crl = downloadCRLFromWeb(crlURL);
-            return crl;
-        } else if (crlURL.startsWith("ldap://")) {
-            X509CRL crl = downloadCRLFromLDAP(crlURL);
-            return crl;
-        } else {
-            throw new CertificateVerificationException(
-                    "Can not download CRL from certificate "
-                            + "distribution point: " + crlURL);
-        }
-    }
-
-    /**
-     * Downloads a CRL from given LDAP url, e.g.
-     * ldap://ldap.infonotary.com/dc=identity-ca,dc=infonotary,dc=com
-     */
-    private static X509CRL downloadCRLFromLDAP(String ldapURL) throws CertificateException, 
-    NamingException, CRLException,
-            CertificateVerificationException {
-        Hashtable<String, String> env = new Hashtable<String, String>();
-        env.put(Context.INITIAL_CONTEXT_FACTORY,
-                "com.sun.jndi.ldap.LdapCtxFactory");
-        env.put(Context.PROVIDER_URL, ldapURL);
-
-        DirContext ctx = new InitialDirContext(env);
-        Attributes avals = ctx.getAttributes("");
-        Attribute aval = avals.get("certificateRevocationList;binary");
-        byte[] val = (byte[]) aval.get();
-        if ((val == null) || (val.length == 0)) {
-            throw new CertificateVerificationException(
-                    "Can not download CRL from: " + ldapURL);
-        } else {
-            InputStream inStream = new ByteArrayInputStream(val);
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509CRL crl = (X509CRL) cf.generateCRL(inStream);
-            return crl;
-        }
-    }
-
-    /**
-     * Downloads a CRL from given HTTP/HTTPS/FTP URL, e.g.
-     * http://crl.infonotary.com/crl/identity-ca.crl
-     */
-    private static X509CRL downloadCRLFromWeb(String crlURL) throws MalformedURLException,
-    IOException, CertificateException,
-            CRLException {
-        URL url = new URL(crlURL);
-        InputStream crlStream = url.openStream();
-        try {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509CRL crl = (X509CRL) cf.generateCRL(crlStream);
-            return crl;
-        } finally {
-            crlStream.close();
-        }
+    private static X509CRL downloadCRL(String crlURL) throws Exception {
+        return FETCHER.fetch(crlURL, null, null).getCRL();
     }
 
     /**
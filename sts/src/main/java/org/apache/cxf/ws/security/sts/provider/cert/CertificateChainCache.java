@@ -0,0 +1,311 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.CertPathBuilderException;
+import java.security.cert.Certificate;
+import java.security.cert.PKIXCertPathBuilderResult;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.ws.security.sts.provider.SingleFlight;
+
+/**
+ * Bounded memory of certification path builds, keyed by the SHA-256
+ * fingerprint of the certificate. A client certificate that comes back
+ * within the TTL is not run through the PKIX path builder again.
+ * <p>
+ * A successful build is remembered until the TTL elapses or the first
+ * certificate of the chain (including the trust anchor) expires, whichever
+ * comes first. A failed build is remembered for the shorter negative TTL.
+ * Entries are tied to the {@link TrustMaterial} they were built with and
+ * are dropped once the trust material is reloaded. Concurrent builds for
+ * the same certificate are coalesced.
+ * <p>
+ * Successful and failed builds are bounded separately, so certificates
+ * that can't be verified do not push out the ones that can. When either
+ * part is full the least recently used entry makes room.
+ * <p>
+ * Only the path build is cached; revocation is still checked for every
+ * verification.
+ */
+public class CertificateChainCache implements CertificateChainCacheMBean {
+
+    private long ttlMillis = 600000L;
+    private long negativeTtlMillis = 60000L;
+    private volatile int maxSize = 10000;
+    private volatile int maxNegativeSize = 1000;
+
+    // guarded by this
+    private final Map<String, Entry> entries = new LruMap(false);
+    private final Map<String, Entry> failures = new LruMap(true);
+    private TrustMaterial trustMaterial;
+
+    private final SingleFlight<String, Entry> builds = new SingleFlight<String, Entry>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Maximum time a successful build is remembered. 0 disables the cache.
+     */
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Time a failed build is remembered. 0 disables negative caching.
+     */
+    public void setNegativeTtlMillis(long negativeTtlMillis) {
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    public long getNegativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+
+    /**
+     * Maximum number of successful builds remembered. Defaults to 10000.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Maximum number of failed builds remembered. Defaults to 1000.
+     */
+    public void setMaxNegativeSize(int maxNegativeSize) {
+        this.maxNegativeSize = maxNegativeSize;
+    }
+
+    /**
+     * Returns the certification chain of the certificate, building it if
+     * there is no current entry.
+     *
+     * @throws CertPathBuilderException
+     *             - if the path can't be built, now or when it was last
+     *             tried
+     */
+    public PKIXCertPathBuilderResult build(final X509Certificate cert,
+            final TrustMaterial trustMaterial) throws GeneralSecurityException {
+        if (ttlMillis <= 0) {
+            return CertificateVerifier.buildCertPath(cert, trustMaterial);
+        }
+        final String key = CertificateFingerprint.sha256Hex(cert);
+        Entry entry = get(key, trustMaterial);
+        if (entry != null) {
+            if (entry.result != null) {
+                hits.incrementAndGet();
+                return entry.result;
+            }
+            negativeHits.incrementAndGet();
+            throw new CertPathBuilderException(
+                    "Certification path could not be built recently", entry.failure);
+        }
+
+        misses.incrementAndGet();
+        entry = builds.execute(key, new Callable<Entry>() {
+            public Entry call() {
+                return buildEntry(key, cert, trustMaterial);
+            }
+        });
+        if (entry.result == null) {
+            throw entry.failure;
+        }
+        return entry.result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        failures.clear();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized int getNegativeSize() {
+        return failures.size();
+    }
+
+    /**
+     * Number of entries dropped to make room for new ones.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Share of lookups, positive or negative, answered from the cache.
+     */
+    public double getHitRatio() {
+        long cached = hits.get() + negativeHits.get();
+        long total = cached + misses.get();
+        return total == 0 ? 0 : (double) cached / total;
+    }
+
+    private synchronized Entry get(String key, TrustMaterial trustMaterial) {
+        Map<String, Entry> map = entries;
+        Entry entry = map.get(key);
+        if (entry == null) {
+            map = failures;
+            entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+        }
+        if (entry.trustMaterial != trustMaterial
+                || entry.expiresAt <= System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private Entry buildEntry(String key, X509Certificate cert,
+            TrustMaterial trustMaterial) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        try {
+            PKIXCertPathBuilderResult result = CertificateVerifier.buildCertPath(
+                    cert, trustMaterial);
+            entry = new Entry(trustMaterial, result, null, Math.min(now
+                    + ttlMillis, getEarliestNotAfter(result)));
+        } catch (CertPathBuilderException e) {
+            entry = new Entry(trustMaterial, null, e, now + negativeTtlMillis);
+            if (negativeTtlMillis <= 0) {
+                return entry;
+            }
+        } catch (GeneralSecurityException e) {
+            // not a property of the certificate, don't remember it
+            return new Entry(trustMaterial, null, e, now);
+        }
+        put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Remembers an entry. The first entry built with reloaded trust material
+     * drops all entries of the previous one; a build still running with the
+     * previous trust material may do the same to the new entries, which
+     * only costs rebuilding them.
+     */
+    private synchronized void put(String key, Entry entry) {
+        if (entry.trustMaterial != trustMaterial) {
+            purge(entries, entry.trustMaterial);
+            purge(failures, entry.trustMaterial);
+            trustMaterial = entry.trustMaterial;
+        }
+        if (entry.result != null) {
+            failures.remove(key);
+            entries.put(key, entry);
+        } else {
+            entries.remove(key);
+            failures.put(key, entry);
+        }
+    }
+
+    private static void purge(Map<String, Entry> map, TrustMaterial current) {
+        for (Iterator<Entry> it = map.values().iterator(); it.hasNext();) {
+            if (it.next().trustMaterial != current) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long getEarliestNotAfter(PKIXCertPathBuilderResult result) {
+        long notAfter = Long.MAX_VALUE;
+        for (Certificate cert : result.getCertPath().getCertificates()) {
+            notAfter = Math.min(notAfter, ((X509Certificate) cert).getNotAfter()
+                    .getTime());
+        }
+        X509Certificate anchor = result.getTrustAnchor().getTrustedCert();
+        if (anchor != null) {
+            notAfter = Math.min(notAfter, anchor.getNotAfter().getTime());
+        }
+        return notAfter;
+    }
+
+    /**
+     * Entries in access order, the least recently used one is dropped when
+     * the map is full.
+     */
+    private final class LruMap extends LinkedHashMap<String, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean negative;
+
+        LruMap(boolean negative) {
+            super(16, 0.75f, true);
+            this.negative = negative;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<String, CertificateChainCache.Entry> eldest) {
+            if (size() <= (negative ? maxNegativeSize : maxSize)) {
+                return false;
+            }
+            evictions.incrementAndGet();
+            return true;
+        }
+    }
+
+    private static final class Entry {
+
+        private final TrustMaterial trustMaterial;
+        private final PKIXCertPathBuilderResult result;
+        private final GeneralSecurityException failure;
+        private final long expiresAt;
+
+        Entry(TrustMaterial trustMaterial, PKIXCertPathBuilderResult result,
+                GeneralSecurityException failure, long expiresAt) {
+            this.trustMaterial = trustMaterial;
+            this.result = result;
+            this.failure = failure;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * SHA-256 fingerprints of certificates, used to key caches and coalesced
+ * requests.
+ */
+public final class CertificateFingerprint {
+
+    private CertificateFingerprint() {
+    }
+
+    public static byte[] sha256(X509Certificate certificate) throws CertificateEncodingException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(
+                    certificate.getEncoded());
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String sha256Hex(X509Certificate certificate) throws CertificateEncodingException {
+        return new String(Hex.encodeHex(sha256(certificate)));
+    }
+
+}
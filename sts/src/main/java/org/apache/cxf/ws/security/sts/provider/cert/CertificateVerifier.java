@@ -27,15 +27,10 @@ import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.cert.CertPathBuilder;
 import java.security.cert.CertPathBuilderException;
-import java.security.cert.CertStore;
 import java.security.cert.CertificateException;
-import java.security.cert.CollectionCertStoreParameters;
-import java.security.cert.PKIXBuilderParameters;
 import java.security.cert.PKIXCertPathBuilderResult;
-import java.security.cert.TrustAnchor;
 import java.security.cert.X509CertSelector;
 import java.security.cert.X509Certificate;
-import java.util.HashSet;
 import java.util.Set;
 
 public final class CertificateVerifier {
@@ -71,6 +66,67 @@ public final class CertificateVerifier {
     public static PKIXCertPathBuilderResult verifyCertificate(
             X509Certificate cert, Set<X509Certificate> additionalCerts,
             boolean verifySelfSignedCert) throws CertificateVerificationException {
+        TrustMaterial trustMaterial;
+        try {
+            trustMaterial = new TrustMaterial(additionalCerts);
+        } catch (Exception ex) {
+            throw new CertificateVerificationException(
+                    "Error verifying the certificate: "
+                            + cert.getSubjectX500Principal(), ex);
+        }
+        return verifyCertificate(cert, trustMaterial, verifySelfSignedCert);
+    }
+
+    /**
+     * Like {@link #verifyCertificate(X509Certificate, Set, boolean)}, with
+     * the trusted certificates already classified, e.g. by a
+     * {@link TrustMaterialCache}.
+     */
+    public static PKIXCertPathBuilderResult verifyCertificate(
+            X509Certificate cert, TrustMaterial trustMaterial,
+            boolean verifySelfSignedCert) throws CertificateVerificationException {
+        return verifyCertificate(cert, trustMaterial, verifySelfSignedCert, null,
+                null);
+    }
+
+    /**
+     * Like {@link #verifyCertificate(X509Certificate, TrustMaterial, boolean)},
+     * taking the certification chain from the cache if it was built recently
+     * and the CRLs from the CRL cache.
+     * 
+     * @param chainCache
+     *            - cache of certification chains, may be <code>null</code>
+     * @param crlCache
+     *            - cache of CRLs, may be <code>null</code>
+     */
+    public static PKIXCertPathBuilderResult verifyCertificate(
+            X509Certificate cert, TrustMaterial trustMaterial,
+            boolean verifySelfSignedCert, CertificateChainCache chainCache,
+            CRLCache crlCache) throws CertificateVerificationException {
+        return verifyCertificate(cert, trustMaterial, verifySelfSignedCert,
+                chainCache, crlCache, RevocationPolicy.HARD_FAIL, 0);
+    }
+
+    /**
+     * Like
+     * {@link #verifyCertificate(X509Certificate, TrustMaterial, boolean, CertificateChainCache, CRLCache)},
+     * with the self-signed check and the revocation policy taken from the
+     * configuration.
+     */
+    public static PKIXCertPathBuilderResult verifyCertificate(
+            X509Certificate cert, TrustMaterial trustMaterial,
+            CertificateVerifierConfig config, CertificateChainCache chainCache,
+            CRLCache crlCache) throws CertificateVerificationException {
+        return verifyCertificate(cert, trustMaterial, config
+                .isVerifySelfSignedCert(), chainCache, crlCache, config
+                .getRevocationPolicy(), config.getFailOpenWindowMillis());
+    }
+
+    private static PKIXCertPathBuilderResult verifyCertificate(
+            X509Certificate cert, TrustMaterial trustMaterial,
+            boolean verifySelfSignedCert, CertificateChainCache chainCache,
+            CRLCache crlCache, RevocationPolicy revocationPolicy,
+            long failOpenWindowMillis) throws CertificateVerificationException {
         try {
             // Check for self-signed certificate
             if (!verifySelfSignedCert) {
@@ -80,26 +136,15 @@ public final class CertificateVerifier {
                 }
             }
 
-            // Prepare a set of trusted root CA certificates
-            // and a set of intermediate certificates
-            Set<X509Certificate> trustedRootCerts = new HashSet<X509Certificate>();
-            Set<X509Certificate> intermediateCerts = new HashSet<X509Certificate>();
-            for (X509Certificate additionalCert : additionalCerts) {
-                if (isSelfSigned(additionalCert)) {
-                    trustedRootCerts.add(additionalCert);
-                } else {
-                    intermediateCerts.add(additionalCert);
-                }
-            }
-
             // Attempt to build the certification chain and verify it
-            PKIXCertPathBuilderResult verifiedCertChain = verifyCertificate(
-                    cert, trustedRootCerts, intermediateCerts,
-                    verifySelfSignedCert);
+            PKIXCertPathBuilderResult verifiedCertChain = chainCache == null
+                    ? buildCertPath(cert, trustMaterial)
+                    : chainCache.build(cert, trustMaterial);
 
             // Check whether the certificate is revoked by the CRL
             // given in its CRL distribution point extension
-            CRLVerifier.verifyCertificateCRLs(cert);
+            CRLVerifier.verifyCertificateCRLs(cert, crlCache, revocationPolicy,
+                    failOpenWindowMillis);
 
             // The chain is built and verified. Return it as a result
             return verifiedCertChain;
@@ -121,6 +166,10 @@ public final class CertificateVerifier {
      */
     public static boolean isSelfSigned(X509Certificate cert) throws CertificateException, 
     NoSuchAlgorithmException, NoSuchProviderException {
+        if (!cert.getSubjectX500Principal().equals(cert.getIssuerX500Principal())) {
+            // issued by someone else, no need to check the signature
+            return false;
+        }
         try {
             // Try to verify certificate signature with its own public key
             PublicKey key = cert.getPublicKey();
@@ -137,53 +186,33 @@ public final class CertificateVerifier {
 
     /**
      * Attempts to build a certification chain for given certificate and to
-     * verify it. Relies on a set of root CA certificates (trust anchors) and a
-     * set of intermediate certificates (to be used as part of the chain).
+     * verify it. Relies on the root CA certificates (trust anchors) and
+     * intermediate certificates (to be used as part of the chain) of the
+     * trust material.
      * 
      * @param cert
      *            - certificate for validation
-     * @param trustedRootCerts
-     *            - set of trusted root CA certificates
-     * @param intermediateCerts
-     *            - set of intermediate certificates
+     * @param trustMaterial
+     *            - trusted root CA and intermediate certificates
      * @return the certification chain (if verification is successful)
      * @throws GeneralSecurityException
      *             - if the verification is not successful (e.g. certification
      *             path cannot be built or some certificate in the chain is
      *             expired)
      */
-    private static PKIXCertPathBuilderResult verifyCertificate(
-            X509Certificate cert, Set<X509Certificate> trustedRootCerts,
-            Set<X509Certificate> intermediateCerts,
-            boolean verifySelfSignedCert) throws GeneralSecurityException {
+    static PKIXCertPathBuilderResult buildCertPath(
+            X509Certificate cert, TrustMaterial trustMaterial)
+        throws GeneralSecurityException {
 
         // Create the selector that specifies the starting certificate
         X509CertSelector selector = new X509CertSelector();
         selector.setCertificate(cert);
 
-        // Create the trust anchors (set of root CA certificates)
-        Set<TrustAnchor> trustAnchors = new HashSet<TrustAnchor>();
-        for (X509Certificate trustedRootCert : trustedRootCerts) {
-            trustAnchors.add(new TrustAnchor(trustedRootCert, null));
-        }
-
-        // Configure the PKIX certificate builder algorithm parameters
-        PKIXBuilderParameters pkixParams = new PKIXBuilderParameters(
-                trustAnchors, selector);
-
-        // Disable CRL checks (this is done manually as additional step)
-        pkixParams.setRevocationEnabled(false);
-
-        // Specify a list of intermediate certificates
-        CertStore intermediateCertStore = CertStore.getInstance("Collection",
-                new CollectionCertStoreParameters(intermediateCerts));
-        pkixParams.addCertStore(intermediateCertStore);
-
         // Build and verify the certification chain
         CertPathBuilder builder = CertPathBuilder.getInstance("PKIX");
         PKIXCertPathBuilderResult result = (PKIXCertPathBuilderResult) builder
-                .build(pkixParams);
+                .build(trustMaterial.newBuilderParameters(selector));
         return result;
     }
 
-}
\ No newline at end of file
+}
@@ -32,6 +32,9 @@ public class CertificateVerifierConfig {
 
     private boolean verifySelfSignedCert;
 
+    private RevocationPolicy revocationPolicy = RevocationPolicy.HARD_FAIL;
+    private long failOpenWindowMillis = 300000L;
+
     public boolean isVerifySelfSignedCert() {
         return verifySelfSignedCert;
     }
@@ -40,6 +43,32 @@ public class CertificateVerifierConfig {
         this.verifySelfSignedCert = verifySelfSignedCert;
     }
 
+    public RevocationPolicy getRevocationPolicy() {
+        return revocationPolicy;
+    }
+
+    /**
+     * What to do when no CRL can be obtained for a certificate. Defaults to
+     * {@link RevocationPolicy#HARD_FAIL}. The other policies need a
+     * {@link CRLCache}.
+     */
+    public void setRevocationPolicy(RevocationPolicy revocationPolicy) {
+        this.revocationPolicy = revocationPolicy;
+    }
+
+    public long getFailOpenWindowMillis() {
+        return failOpenWindowMillis;
+    }
+
+    /**
+     * How long after its distribution points started failing a certificate
+     * without any CRL is accepted under {@link RevocationPolicy#FAIL_OPEN}.
+     * Defaults to 5 minutes.
+     */
+    public void setFailOpenWindowMillis(long failOpenWindowMillis) {
+        this.failOpenWindowMillis = failOpenWindowMillis;
+    }
+
     public String getStorePath() {
         return storePath;
     }
@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The revoked serial numbers of a CRL in a compact, sorted form. Each
+ * serial number takes as many bytes as the longest one in the CRL, stored
+ * back to back in a single buffer; a lookup is a binary search over the
+ * buffer. Compared to keeping the {@link X509CRL} with its entry objects
+ * this needs a fraction of the memory, and none of the Java heap if the
+ * buffer is direct or a memory-mapped file.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class RevocationIndex {
+
+    /**
+     * Where the serial numbers are kept.
+     */
+    public enum Storage {
+        /** A byte array on the Java heap. */
+        HEAP,
+        /** A direct buffer outside of the Java heap. */
+        DIRECT,
+        /** A memory-mapped temporary file, paged in by the OS as needed. */
+        MAPPED
+    }
+
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    private final Storage storage;
+    private final int size;
+    private final int width;
+    private final ByteBuffer serials;
+
+    private RevocationIndex(X509CRL crl, Storage storage, int size, int width,
+            ByteBuffer serials) {
+        this.thisUpdate = crl.getThisUpdate();
+        this.nextUpdate = crl.getNextUpdate();
+        this.storage = storage;
+        this.size = size;
+        this.width = width;
+        this.serials = serials;
+    }
+
+    /**
+     * Builds the index of a CRL.
+     *
+     * @param directory
+     *            - where the file of a memory-mapped index is created,
+     *            <code>null</code> for the default temporary directory
+     */
+    public static RevocationIndex create(X509CRL crl, Storage storage,
+            File directory) throws IOException {
+        List<BigInteger> revoked = new ArrayList<BigInteger>();
+        Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        if (entries != null) {
+            for (X509CRLEntry entry : entries) {
+                revoked.add(entry.getSerialNumber());
+            }
+        }
+        Collections.sort(revoked);
+
+        int width = 1;
+        for (BigInteger serial : revoked) {
+            width = Math.max(width, serial.toByteArray().length);
+        }
+        int size = 0;
+        byte[] record = new byte[width];
+        ByteBuffer serials = allocate(revoked.size() * width, storage, directory);
+        BigInteger previous = null;
+        for (BigInteger serial : revoked) {
+            if (serial.equals(previous)) {
+                continue;
+            }
+            encode(serial, record, width);
+            serials.put(record);
+            previous = serial;
+            size++;
+        }
+        return new RevocationIndex(crl, storage, size, width, serials);
+    }
+
+    public boolean isRevoked(X509Certificate cert) {
+        return isRevoked(cert.getSerialNumber());
+    }
+
+    public boolean isRevoked(BigInteger serial) {
+        byte[] key = serial.toByteArray();
+        if (key.length > width) {
+            return false;
+        }
+        if (key.length < width) {
+            byte[] padded = new byte[width];
+            encode(serial, padded, width);
+            key = padded;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid * width, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /**
+     * Time of the next CRL update, or <code>null</code> if the CRL has none.
+     */
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Number of revoked serial numbers.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Bytes taken by the serial numbers.
+     */
+    public long getByteCount() {
+        return (long) size * width;
+    }
+
+    /**
+     * Compares the serial number at the offset with the key, both in two's
+     * complement of the index width.
+     */
+    private int compare(int offset, byte[] key) {
+        // the first byte carries the sign
+        int cmp = serials.get(offset) - key[0];
+        for (int i = 1; cmp == 0 && i < width; i++) {
+            cmp = (serials.get(offset + i) & 0xff) - (key[i] & 0xff);
+        }
+        return cmp;
+    }
+
+    private static void encode(BigInteger serial, byte[] record, int width) {
+        byte[] bytes = serial.toByteArray();
+        byte pad = serial.signum() < 0 ? (byte) 0xff : 0;
+        int start = width - bytes.length;
+        for (int i = 0; i < start; i++) {
+            record[i] = pad;
+        }
+        System.arraycopy(bytes, 0, record, start, bytes.length);
+    }
+
+    private static ByteBuffer allocate(int capacity, Storage storage,
+            File directory) throws IOException {
+        switch (storage) {
+        case DIRECT:
+            return ByteBuffer.allocateDirect(capacity);
+        case MAPPED:
+            File file = File.createTempFile("crl", ".idx", directory);
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    // the mapping stays valid after the file is closed
+                    return raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                            0, capacity);
+                } finally {
+                    raf.close();
+                }
+            } finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        default:
+            return ByteBuffer.allocate(capacity);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+/**
+ * What to do when the revocation status of a certificate can't be
+ * determined because none of its CRL distribution points delivers a CRL.
+ */
+public enum RevocationPolicy {
+
+    /**
+     * Reject the certificate. Expired CRLs are only used within the grace
+     * period of the {@link CRLCache}.
+     */
+    HARD_FAIL,
+
+    /**
+     * Check the certificate against the last CRL downloaded from one of the
+     * distribution points, however old. Reject it if there is none.
+     */
+    SOFT_FAIL,
+
+    /**
+     * Like {@link #SOFT_FAIL}, but accept the certificate if there is no CRL
+     * at all, as long as the distribution points have been failing for less
+     * than the fail-open window.
+     */
+    FAIL_OPEN
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.cert.CertStore;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Trusted certificates prepared for path building. The certificates are
+ * split into root CA certificates (self-signed, used as trust anchors) and
+ * intermediate certificates once, when the trust material is created, and
+ * the PKIX builder parameters are set up as a template that is copied for
+ * each verification.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class TrustMaterial {
+
+    private final Set<X509Certificate> rootCerts;
+    private final Set<X509Certificate> intermediateCerts;
+    private final PKIXBuilderParameters template;
+
+    /**
+     * @param certs
+     *            - trusted root CA certificates and intermediate
+     *            certificates. All self-signed certificates are considered
+     *            to be trusted root CA certificates.
+     * @throws InvalidAlgorithmParameterException
+     *             - if there is no root CA certificate
+     */
+    public TrustMaterial(Collection<X509Certificate> certs) throws GeneralSecurityException {
+        Set<X509Certificate> roots = new HashSet<X509Certificate>();
+        Set<X509Certificate> intermediates = new HashSet<X509Certificate>();
+        for (X509Certificate cert : certs) {
+            if (CertificateVerifier.isSelfSigned(cert)) {
+                roots.add(cert);
+            } else {
+                intermediates.add(cert);
+            }
+        }
+        rootCerts = Collections.unmodifiableSet(roots);
+        intermediateCerts = Collections.unmodifiableSet(intermediates);
+
+        Set<TrustAnchor> trustAnchors = new HashSet<TrustAnchor>();
+        for (X509Certificate root : roots) {
+            trustAnchors.add(new TrustAnchor(root, null));
+        }
+        if (trustAnchors.isEmpty()) {
+            throw new InvalidAlgorithmParameterException(
+                    "No self-signed certificate among the trusted certificates");
+        }
+        template = new PKIXBuilderParameters(trustAnchors, null);
+        // CRL checks are done manually as additional step
+        template.setRevocationEnabled(false);
+        template.addCertStore(CertStore.getInstance("Collection",
+                new CollectionCertStoreParameters(intermediates)));
+    }
+
+    public Set<X509Certificate> getRootCerts() {
+        return rootCerts;
+    }
+
+    public Set<X509Certificate> getIntermediateCerts() {
+        return intermediateCerts;
+    }
+
+    /**
+     * Returns a copy of the builder parameters template that starts at the
+     * certificates matched by the selector.
+     */
+    public PKIXBuilderParameters newBuilderParameters(X509CertSelector selector) {
+        PKIXBuilderParameters params = (PKIXBuilderParameters) template.clone();
+        params.setTargetCertConstraints(selector);
+        return params;
+    }
+
+}
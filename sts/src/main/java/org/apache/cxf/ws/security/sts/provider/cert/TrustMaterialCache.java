@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Holds the {@link TrustMaterial} built from the key store and trusted
+ * aliases of a {@link CertificateVerifierConfig}. The key store is read
+ * once instead of on every verification.
+ * <p>
+ * If the key store is a plain file and a reload interval is set, the file
+ * is polled for changes and the trust material is rebuilt and swapped
+ * atomically; verifications in progress keep using the trust material they
+ * started with. A key store that fails to load leaves the previous trust
+ * material in place.
+ */
+public class TrustMaterialCache implements TrustMaterialCacheMBean {
+
+    private static final Log LOG = LogFactory.getLog(TrustMaterialCache.class
+            .getName());
+
+    private static final String JKS_INSTANCE = "JKS";
+
+    private CertificateVerifierConfig config;
+    private long reloadIntervalMillis;
+
+    private volatile TrustMaterial trustMaterial;
+    private volatile long lastModified;
+    private volatile long lastLength;
+    private volatile long lastLoadMillis;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failedLoads = new AtomicLong();
+
+    private ScheduledExecutorService watcher;
+
+    public TrustMaterialCache() {
+    }
+
+    public TrustMaterialCache(CertificateVerifierConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Key store location (a class path resource, or else a file system
+     * path), password and trusted aliases.
+     */
+    public void setCertificateVerifierConfig(CertificateVerifierConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Interval in milliseconds in which the key store is checked for
+     * changes. 0 (the default) disables reloading. Class path resources are
+     * only watched if they are plain files.
+     */
+    public void setReloadIntervalMillis(long reloadIntervalMillis) {
+        this.reloadIntervalMillis = reloadIntervalMillis;
+    }
+
+    /**
+     * Loads the trust material and starts watching the key store.
+     */
+    public synchronized void start() {
+        try {
+            get();
+        } catch (CertificateVerificationException e) {
+            // only UseKey certificates depend on it, don't fail the startup
+            LOG.warn("Can't load trusted certificates from " + getStorePath()
+                    + ", trying again on first use", e);
+        }
+        if (reloadIntervalMillis > 0 && watcher == null && getFile() != null) {
+            watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TrustMaterialCache watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            watcher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    reloadIfModified();
+                }
+            }, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Returns the current trust material, loading it on first use.
+     *
+     * @throws CertificateVerificationException
+     *             - if the key store can't be loaded the first time
+     */
+    public TrustMaterial get() throws CertificateVerificationException {
+        TrustMaterial current = trustMaterial;
+        if (current == null) {
+            synchronized (this) {
+                if (trustMaterial == null) {
+                    load();
+                }
+                current = trustMaterial;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Rebuilds the trust material from the key store. If that fails the
+     * previous trust material is kept.
+     */
+    public void reload() {
+        try {
+            load();
+        } catch (CertificateVerificationException e) {
+            LOG.warn("Can't reload trusted certificates from "
+                    + getStorePath() + ", keeping the previous ones", e);
+        }
+    }
+
+    public String getStorePath() {
+        return config == null ? null : config.getStorePath();
+    }
+
+    public int getRootCertCount() {
+        TrustMaterial current = trustMaterial;
+        return current == null ? 0 : current.getRootCerts().size();
+    }
+
+    public int getIntermediateCertCount() {
+        TrustMaterial current = trustMaterial;
+        return current == null ? 0 : current.getIntermediateCerts().size();
+    }
+
+    /**
+     * Duration of the last successful load in milliseconds.
+     */
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    /**
+     * Modification time of the key store the current trust material was
+     * built from, 0 for resources that are not plain files.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getFailedLoadCount() {
+        return failedLoads.get();
+    }
+
+    void reloadIfModified() {
+        File file = getFile();
+        if (file != null
+                && (file.lastModified() != lastModified || file.length() != lastLength)) {
+            reload();
+        }
+    }
+
+    private synchronized void load() throws CertificateVerificationException {
+        long start = System.nanoTime();
+        File file = getFile();
+        // taken before reading, so a change during the read triggers a reload
+        long modified = file == null ? 0 : file.lastModified();
+        long length = file == null ? 0 : file.length();
+        TrustMaterial loaded;
+        try {
+            InputStream is = open(file);
+            try {
+                KeyStore ks = KeyStore.getInstance(JKS_INSTANCE);
+                ks.load(is, config.getStorePwd().toCharArray());
+                List<X509Certificate> certs = new ArrayList<X509Certificate>();
+                for (String alias : config.getTrustCertAliases()) {
+                    Certificate cert = ks.getCertificate(alias);
+                    if (!(cert instanceof X509Certificate)) {
+                        throw new KeyStoreException(
+                                "No X509 certificate for alias " + alias);
+                    }
+                    certs.add((X509Certificate) cert);
+                }
+                loaded = new TrustMaterial(certs);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            failedLoads.incrementAndGet();
+            throw new CertificateVerificationException(
+                    "Can't read trusted certificates from " + getStorePath(), e);
+        } catch (GeneralSecurityException e) {
+            failedLoads.incrementAndGet();
+            throw new CertificateVerificationException(
+                    "Can't load trusted certificates from " + getStorePath(), e);
+        }
+
+        trustMaterial = loaded;
+        lastModified = modified;
+        lastLength = length;
+        lastLoadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        loads.incrementAndGet();
+        LOG.info("Loaded " + loaded.getRootCerts().size() + " root and "
+                + loaded.getIntermediateCerts().size()
+                + " intermediate certificates from " + getStorePath() + " in "
+                + lastLoadMillis + " ms");
+    }
+
+    private InputStream open(File file) throws IOException {
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        InputStream is = TrustMaterialCache.class.getResourceAsStream(getStorePath());
+        if (is == null) {
+            throw new FileNotFoundException(getStorePath());
+        }
+        return is;
+    }
+
+    /**
+     * The file behind the store path, or <code>null</code> if it is a class
+     * path resource inside an archive.
+     */
+    private File getFile() {
+        String storePath = getStorePath();
+        URL url = TrustMaterialCache.class.getResource(storePath);
+        if (url == null) {
+            File file = new File(storePath);
+            return file.isFile() ? file : null;
+        }
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+}
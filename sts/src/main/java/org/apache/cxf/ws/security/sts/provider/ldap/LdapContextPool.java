@@ -0,0 +1,347 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.ldap;
+
+import java.util.Hashtable;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.AuthenticationException;
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Bounded pool of LDAP connections to one server. At most
+ * <code>maxSize</code> contexts are borrowed at a time; a borrower waits up
+ * to <code>maxWaitMillis</code> for one to be returned.
+ * <p>
+ * When a context is borrowed with credentials it is bound again on its
+ * existing connection (LDAPv3 allows a bind at any time), so authenticating
+ * a user costs a bind round trip but no TCP or TLS handshake. A failed bind
+ * leaves the connection usable, so the context goes back to the pool and
+ * wrong passwords do not cost new connections either. A pool is meant to be
+ * used either always with or always without credentials.
+ * <p>
+ * The most recently returned context is handed out first, so contexts not
+ * needed at the current load stay idle and are closed after
+ * <code>maxIdleMillis</code>. A context borrowed without credentials that
+ * has been idle for longer than <code>validationIntervalMillis</code> is
+ * checked with a read of the root DSE first; a context the server closed in
+ * the meantime is discarded and the next one is tried.
+ */
+public class LdapContextPool {
+
+    private static final String LDAP_CONTEXT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
+    private static final String CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
+    private static final String READ_TIMEOUT = "com.sun.jndi.ldap.read.timeout";
+
+    private final String url;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final BlockingDeque<IdleContext> idle = new LinkedBlockingDeque<IdleContext>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    private long connectTimeoutMillis = 5000L;
+    private long readTimeoutMillis = 5000L;
+    private long maxWaitMillis = 1000L;
+    private long maxIdleMillis = 300000L;
+    private long validationIntervalMillis = 30000L;
+    private volatile boolean closed;
+
+    public LdapContextPool(String url, int maxSize) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(long readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Maximum time to wait for a context when all of them are in use.
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Time after which an idle context is closed. 0 keeps idle contexts
+     * open. Defaults to 5 minutes.
+     */
+    public void setMaxIdleMillis(long maxIdleMillis) {
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * Idle time after which a context is checked before it is handed out
+     * without credentials. Defaults to 30 seconds.
+     */
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    /**
+     * Takes a context from the pool, bound with the given credentials (or
+     * left as it is if <code>principal</code> is <code>null</code>). Every
+     * borrowed context must be handed back with {@link #release} or
+     * {@link #invalidate}.
+     *
+     * @throws AuthenticationException if the bind fails; the context is
+     *             returned to the pool in that case
+     * @throws ServiceUnavailableException if no context became available
+     *             in time
+     */
+    public LdapContext borrow(String principal, String credentials) throws NamingException {
+        if (closed) {
+            throw new ServiceUnavailableException("Pool for " + url + " is closed");
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw new ServiceUnavailableException("No LDAP connection to " + url
+                        + " available within " + maxWaitMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted");
+        }
+
+        boolean borrowed = false;
+        try {
+            evictIdle();
+            IdleContext candidate = idle.pollFirst();
+            while (candidate != null) {
+                LdapContext context = candidate.context;
+                try {
+                    if (principal != null) {
+                        bind(context, principal, credentials);
+                        borrowed = true;
+                        return context;
+                    }
+                    if (isValid(candidate)) {
+                        borrowed = true;
+                        return context;
+                    }
+                } catch (CommunicationException e) {
+                    validationFailures.incrementAndGet();
+                } catch (AuthenticationException e) {
+                    // rejected credentials, the connection is fine
+                    clearCredentials(context);
+                    returnIdle(context);
+                    throw e;
+                } catch (NamingException e) {
+                    discard(context);
+                    throw e;
+                }
+                // closed by the server while idle, try the next one
+                discard(context);
+                candidate = idle.pollFirst();
+            }
+            LdapContext context = create(principal, credentials);
+            borrowed = true;
+            return context;
+        } finally {
+            if (!borrowed) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Returns a healthy context to the pool.
+     */
+    public void release(LdapContext context) {
+        returnIdle(context);
+        permits.release();
+    }
+
+    /**
+     * Closes a context that failed and must not be reused.
+     */
+    public void invalidate(LdapContext context) {
+        discard(context);
+        permits.release();
+    }
+
+    /**
+     * Closes the idle contexts; borrowed ones are closed when they are
+     * returned.
+     */
+    public void close() {
+        closed = true;
+        IdleContext candidate;
+        while ((candidate = idle.poll()) != null) {
+            discard(candidate.context);
+        }
+    }
+
+    /**
+     * Closes the contexts that have been idle for longer than
+     * <code>maxIdleMillis</code>. Called on every borrow; a pool that is not
+     * used any more can be trimmed by calling it periodically.
+     */
+    public void evictIdle() {
+        if (maxIdleMillis <= 0) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - maxIdleMillis;
+        IdleContext candidate = idle.peekLast();
+        while (candidate != null && candidate.since < oldest) {
+            // a concurrent borrower may have taken it meanwhile
+            if (idle.removeLastOccurrence(candidate)) {
+                evicted.incrementAndGet();
+                discard(candidate.context);
+            }
+            candidate = idle.peekLast();
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getBorrowedCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Number of connections opened since the pool was created.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Number of connections closed because they were idle for too long.
+     */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    /**
+     * Number of idle connections found broken when they were borrowed.
+     */
+    public long getValidationFailureCount() {
+        return validationFailures.get();
+    }
+
+    private LdapContext create(String principal, String credentials) throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<String, Object>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, LDAP_CONTEXT_FACTORY);
+        env.put(Context.PROVIDER_URL, url);
+        env.put(CONNECT_TIMEOUT, Long.toString(connectTimeoutMillis));
+        env.put(READ_TIMEOUT, Long.toString(readTimeoutMillis));
+        if (principal != null) {
+            env.put(Context.SECURITY_AUTHENTICATION, "simple");
+            env.put(Context.SECURITY_PRINCIPAL, principal);
+            env.put(Context.SECURITY_CREDENTIALS, credentials);
+        }
+        LdapContext context = new InitialLdapContext(env, null);
+        open.incrementAndGet();
+        created.incrementAndGet();
+        return context;
+    }
+
+    private boolean isValid(IdleContext candidate) {
+        if (System.currentTimeMillis() - candidate.since < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            // "1.1" asks for no attributes at all
+            candidate.context.getAttributes("", new String[] {"1.1"});
+            return true;
+        } catch (NamingException e) {
+            validationFailures.incrementAndGet();
+            return false;
+        }
+    }
+
+    private static void bind(LdapContext context, String principal,
+            String credentials) throws NamingException {
+        context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "simple");
+        context.addToEnvironment(Context.SECURITY_PRINCIPAL, principal);
+        context.addToEnvironment(Context.SECURITY_CREDENTIALS, credentials);
+        // rebinds on the existing connection
+        context.reconnect(null);
+    }
+
+    private void returnIdle(LdapContext context) {
+        if (closed) {
+            discard(context);
+        } else {
+            idle.offerFirst(new IdleContext(context));
+        }
+    }
+
+    private static void clearCredentials(LdapContext context) {
+        try {
+            context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+        } catch (NamingException e) {
+            // only the local environment is changed
+        }
+    }
+
+    private void discard(LdapContext context) {
+        open.decrementAndGet();
+        try {
+            context.close();
+        } catch (NamingException e) {
+            // nothing left to clean up
+        }
+    }
+
+    private static final class IdleContext {
+
+        private final LdapContext context;
+        private final long since = System.currentTimeMillis();
+
+        IdleContext(LdapContext context) {
+            this.context = context;
+        }
+    }
+
+}
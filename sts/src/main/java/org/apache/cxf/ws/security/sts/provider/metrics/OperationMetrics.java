@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request, error and latency statistics of one WS-Trust operation. The
+ * latency covers the whole provider invocation up to the response object
+ * (marshalling the response happens afterwards and is not included), the
+ * delegate latency only the call of the operation implementation. Nothing
+ * is computed until the statistics are read, so the cost while idle is
+ * zero and while busy a few atomic increments per request.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram delegateLatency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public OperationMetrics(String operation) {
+        this.operation = operation;
+    }
+
+    public void recordSuccess(long nanos) {
+        requests.incrementAndGet();
+        latency.recordNanos(nanos);
+    }
+
+    public void recordFailure(long nanos) {
+        requests.incrementAndGet();
+        errors.incrementAndGet();
+        latency.recordNanos(nanos);
+    }
+
+    public void recordDelegateLatency(long nanos) {
+        delegateLatency.recordNanos(nanos);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getDelegateLatency() {
+        return delegateLatency;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public double getLatencyMeanMillis() {
+        return latency.getMean() / 1000.0;
+    }
+
+    public double getLatencyP50Millis() {
+        return toMillis(latency.getValueAtPercentile(50.0));
+    }
+
+    public double getLatencyP99Millis() {
+        return toMillis(latency.getValueAtPercentile(99.0));
+    }
+
+    public double getLatencyP999Millis() {
+        return toMillis(latency.getValueAtPercentile(99.9));
+    }
+
+    public double getLatencyMaxMillis() {
+        return toMillis(latency.getMax());
+    }
+
+    public double getDelegateLatencyMeanMillis() {
+        return delegateLatency.getMean() / 1000.0;
+    }
+
+    public double getDelegateLatencyP50Millis() {
+        return toMillis(delegateLatency.getValueAtPercentile(50.0));
+    }
+
+    public double getDelegateLatencyP99Millis() {
+        return toMillis(delegateLatency.getValueAtPercentile(99.0));
+    }
+
+    public double getDelegateLatencyP999Millis() {
+        return toMillis(delegateLatency.getValueAtPercentile(99.9));
+    }
+
+    public double getDelegateLatencyMaxMillis() {
+        return toMillis(delegateLatency.getMax());
+    }
+
+    public void reset() {
+        latency.reset();
+        delegateLatency.reset();
+        requests.set(0);
+        errors.set(0);
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count, error and latency statistics of one kind of backend query, such as
+ * a user lookup in a database or a CRL download.
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+
+    private final String query;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public QueryMetrics(String query) {
+        this.query = query;
+    }
+
+    public void recordSuccess(long nanos) {
+        queries.incrementAndGet();
+        latency.recordNanos(nanos);
+    }
+
+    public void recordFailure(long nanos) {
+        queries.incrementAndGet();
+        errors.incrementAndGet();
+        latency.recordNanos(nanos);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public long getQueryCount() {
+        return queries.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public double getLatencyMeanMillis() {
+        return latency.getMean() / 1000.0;
+    }
+
+    public double getLatencyP50Millis() {
+        return toMillis(latency.getValueAtPercentile(50.0));
+    }
+
+    public double getLatencyP99Millis() {
+        return toMillis(latency.getValueAtPercentile(99.0));
+    }
+
+    public double getLatencyP999Millis() {
+        return toMillis(latency.getValueAtPercentile(99.9));
+    }
+
+    public double getLatencyMaxMillis() {
+        return toMillis(latency.getMax());
+    }
+
+    public void reset() {
+        latency.reset();
+        queries.set(0);
+        errors.set(0);
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+}
@@ -31,9 +31,7 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import javax.xml.bind.JAXBElement;
 import javax.xml.crypto.dsig.CanonicalizationMethod;
@@ -52,21 +50,25 @@ import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 import javax.xml.namespace.QName;
 
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.cxf.helpers.DOMUtils;
 import org.apache.cxf.ws.security.sts.provider.ProviderPasswordCallback;
+import org.apache.cxf.ws.security.sts.provider.STSErrorCode;
 import org.apache.cxf.ws.security.sts.provider.STSException;
+import org.apache.cxf.ws.security.sts.provider.cert.CRLCache;
+import org.apache.cxf.ws.security.sts.provider.cert.CertificateChainCache;
 import org.apache.cxf.ws.security.sts.provider.cert.CertificateVerifier;
 import org.apache.cxf.ws.security.sts.provider.cert.CertificateVerifierConfig;
+import org.apache.cxf.ws.security.sts.provider.cert.TrustMaterialCache;
 import org.apache.cxf.ws.security.sts.provider.token.TokenProvider;
+import org.apache.cxf.ws.security.sts.provider.user.AuthenticationResult;
+import org.apache.cxf.ws.security.sts.provider.user.LoginThrottle;
+import org.apache.cxf.ws.security.sts.provider.user.UserStore;
+import org.apache.cxf.ws.security.sts.provider.user.XmlUserStore;
 import org.apache.xml.security.utils.Constants;
 import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
 import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseType;
@@ -96,13 +98,42 @@ public class IssueDelegate implements IssueOperation {
             .createTokenType("").getName();
 
     private ProviderPasswordCallback passwordCallback;
+    private UserStore userStore;
+    private LoginThrottle loginThrottle;
     private List<TokenProvider> tokenProviders;
     private CertificateVerifierConfig certificateVerifierConfig;
+    private TrustMaterialCache trustMaterialCache;
+    private CertificateChainCache certificateChainCache;
+    private CRLCache crlCache;
 
     public void setPasswordCallback(ProviderPasswordCallback passwordCallback) {
         this.passwordCallback = passwordCallback;
     }
 
+    /**
+     * Users allowed to authenticate with a username token. Defaults to an
+     * {@link XmlUserStore} reading /tomcat-users.xml from the class path.
+     */
+    public void setUserStore(UserStore userStore) {
+        this.userStore = userStore;
+    }
+
+    public synchronized UserStore getUserStore() {
+        if (userStore == null) {
+            userStore = new XmlUserStore();
+        }
+        return userStore;
+    }
+
+    /**
+     * Rejects username token requests for users or from addresses with too
+     * many recent failures before the password is checked. Not set by
+     * default.
+     */
+    public void setLoginThrottle(LoginThrottle loginThrottle) {
+        this.loginThrottle = loginThrottle;
+    }
+
     public void setTokenProviders(List<TokenProvider> tokenProviders) {
         this.tokenProviders = tokenProviders;
     }
@@ -112,6 +143,38 @@ public class IssueDelegate implements IssueOperation {
         this.certificateVerifierConfig = certificateVerifierConfig;
     }
 
+    /**
+     * Trusted certificates for UseKey certificate verification. Defaults to
+     * a {@link TrustMaterialCache} built from the certificate verifier
+     * configuration.
+     */
+    public void setTrustMaterialCache(TrustMaterialCache trustMaterialCache) {
+        this.trustMaterialCache = trustMaterialCache;
+    }
+
+    public synchronized TrustMaterialCache getTrustMaterialCache() {
+        if (trustMaterialCache == null) {
+            trustMaterialCache = new TrustMaterialCache(certificateVerifierConfig);
+        }
+        return trustMaterialCache;
+    }
+
+    /**
+     * Remembers the certification chains of recently verified UseKey
+     * certificates. Not set by default.
+     */
+    public void setCertificateChainCache(CertificateChainCache certificateChainCache) {
+        this.certificateChainCache = certificateChainCache;
+    }
+
+    /**
+     * Keeps the CRLs of UseKey certificates between requests. Not set by
+     * default, so every verification downloads the CRLs.
+     */
+    public void setCrlCache(CRLCache crlCache) {
+        this.crlCache = crlCache;
+    }
+
     @Override
     public RequestSecurityTokenResponseCollectionType issue(
             RequestSecurityTokenType request) {
@@ -129,7 +192,8 @@ public class IssueDelegate implements IssueOperation {
                 }
             } catch (CertificateException e) {
                 throw new STSException(
-                        "Can't extract X509 certificate from request", e);
+                        "Can't extract X509 certificate from request", e,
+                        STSErrorCode.INVALID_REQUEST);
             }
 
             // TokenType
@@ -142,19 +206,23 @@ public class IssueDelegate implements IssueOperation {
         }
 
         // check input arguments
-        if (certificate != null) { // certificate
-            try {
-                verifyCertificate(certificate);
-            } catch (Exception e) {
-                throw new STSException(
-                        "Can't verify X509 certificate from request", e);
-            }
-        } else { // username
+        if (certificate == null) { // username
             username = passwordCallback.resetUsername();
             if (username == null) {
-                throw new STSException("No credentials provided");
+                throw new STSException("No credentials provided",
+                        STSErrorCode.FAILED_AUTHENTICATION, false);
+            }
+            String password = passwordCallback.resetPassword();
+            String address = null;
+            if (loginThrottle != null) {
+                address = passwordCallback.resetAddress();
+                if (loginThrottle.isBlocked(username, address)) {
+                    throw new STSException(
+                            "Too many failed logins, try again later",
+                            STSErrorCode.FAILED_AUTHENTICATION, false);
+                }
             }
-            authenticate(username, passwordCallback.resetPassword());
+            authenticate(username, password, address);
         }
 
         // create token
@@ -168,17 +236,16 @@ public class IssueDelegate implements IssueOperation {
         if (tokenProvider == null) {
             throw new STSException(
                     "No token provider found for requested token type: "
-                            + tokenType);
+                            + tokenType, STSErrorCode.BAD_REQUEST, false);
         }
 
-        Element elementToken = null;
-
+        Element elementToken;
         if (certificate != null) {
+            verifyUseKeyCertificate(certificate);
             elementToken = tokenProvider.createToken(certificate);
         } else {
             elementToken = tokenProvider.createToken(username);
         }
-
         String tokenId = tokenProvider.getTokenId(elementToken);
         signSAML(elementToken, tokenId);
 
@@ -192,20 +259,20 @@ public class IssueDelegate implements IssueOperation {
         return responseCollection;
     }
 
-    private void verifyCertificate(X509Certificate certificate) throws Exception {
-        KeyStore ks = KeyStore.getInstance(JKS_INSTANCE);
-
-        ks.load(this.getClass().getResourceAsStream(
-                certificateVerifierConfig.getStorePath()),
-                certificateVerifierConfig.getStorePwd().toCharArray());
-        Set<X509Certificate> trustedRootCerts = new HashSet<X509Certificate>();
-        for (String alias : certificateVerifierConfig.getTrustCertAliases()) {
-            java.security.cert.Certificate stsCert = ks.getCertificate(alias);
-            trustedRootCerts.add((X509Certificate) stsCert);
+    private void verifyUseKeyCertificate(X509Certificate certificate) {
+        try {
+            verifyCertificate(certificate);
+        } catch (Exception e) {
+            throw new STSException(
+                    "Can't verify X509 certificate from request", e,
+                    STSErrorCode.FAILED_AUTHENTICATION);
         }
+    }
 
-        CertificateVerifier.verifyCertificate(certificate, trustedRootCerts,
-                certificateVerifierConfig.isVerifySelfSignedCert());
+    private void verifyCertificate(X509Certificate certificate) throws Exception {
+        CertificateVerifier.verifyCertificate(certificate,
+                getTrustMaterialCache().get(), certificateVerifierConfig,
+                certificateChainCache, crlCache);
     }
 
     private RequestSecurityTokenResponseType wrapAssertionToResponse(
@@ -304,33 +371,34 @@ public class IssueDelegate implements IssueOperation {
         return null;
     }
 
-    private void authenticate(String username, String password) {
+    private void authenticate(String username, String password, String address) {
+        AuthenticationResult result;
         try {
-            Document document = DOMUtils.readXml(this.getClass()
-                    .getResourceAsStream("/tomcat-users.xml"));
-            NodeList users = document.getElementsByTagName("user");
-            for (int userIndex = 0; userIndex < users.getLength(); userIndex++) {
-                Node currentUser = users.item(userIndex);
-                Attr currentUsername = (Attr) currentUser.getAttributes()
-                        .getNamedItem("username");
-                Attr currentPassword = (Attr) currentUser.getAttributes()
-                        .getNamedItem("password");
-
-                if (!username.equals(currentUsername.getTextContent())) {
-                    if (userIndex == users.getLength() - 1) {
-                        throw new STSException("Wrong username");
-                    }
-                    continue;
-                } else {
-                    if (!password.equals(currentPassword.getTextContent())) {
-                        throw new STSException("Wrong password");
-                    }
-                    LOG.info("Authentication successful for " + username);
-                    break;
-                }
+            result = getUserStore().authenticate(username, password);
+        } catch (RuntimeException e) {
+            throw new STSException("Error during authentication", e,
+                    STSErrorCode.FAILED_AUTHENTICATION);
+        }
+        if (loginThrottle != null) {
+            if (result == AuthenticationResult.SUCCESS) {
+                loginThrottle.recordSuccess(username);
+            } else {
+                loginThrottle.recordFailure(username, address);
             }
-        } catch (Exception e) {
-            throw new STSException("Error during authentication", e);
+        }
+        switch (result) {
+        case SUCCESS:
+            LOG.info("Authentication successful for " + username);
+            return;
+        default:
+            // unknown user and wrong password look the same to the client;
+            // the username is the caller's input, so it is not logged
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Authentication failed: " + result);
+            }
+            throw new STSException(
+                    STSErrorCode.FAILED_AUTHENTICATION.getDefaultReason(),
+                    STSErrorCode.FAILED_AUTHENTICATION, false);
         }
     }
 
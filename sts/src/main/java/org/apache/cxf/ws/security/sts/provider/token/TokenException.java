@@ -20,7 +20,10 @@
 package org.apache.cxf.ws.security.sts.provider.token;
 
 /**
- *
+ * Failure to create a token. Unlike the rejections of a request, which are
+ * reported without a stack trace (see
+ * {@link org.apache.cxf.ws.security.sts.provider.STSException}), it always
+ * wraps an unexpected error and captures its stack trace.
  */
 public class TokenException extends RuntimeException {
 
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source of the attributes of users, e.g. for attribute statements.
+ */
+public interface AttributeStore {
+
+    /**
+     * @return the attribute values by attribute name, empty if the user has
+     *         no attributes or is unknown
+     */
+    Map<String, List<String>> getAttributes(String username);
+
+    /**
+     * Looks up the attributes of several users at once.
+     *
+     * @return the attributes by username; users without attributes are
+     *         missing
+     */
+    Map<String, Map<String, List<String>>> getAttributes(Collection<String> usernames);
+
+}
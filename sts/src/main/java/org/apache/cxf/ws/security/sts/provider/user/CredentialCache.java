@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Bounded, short-lived memory of successful password checks, so an
+ * expensive check (an LDAP bind, a PBKDF2 hash) is done once per TTL instead
+ * of once per request.
+ * <p>
+ * Entries are keyed by an HMAC-SHA256 of username, password and the stored
+ * credential under a random per-instance key. Neither the password nor a
+ * plain hash of it is kept, and a changed stored credential no longer
+ * matches its old entries. Only successes are ever added. When the cache
+ * is full the least recently used entry makes room.
+ */
+public class CredentialCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private long ttlMillis = 60000L;
+    private volatile int maxSize = 10000;
+
+    // guarded by itself, in access order
+    private final Map<String, Long> entries = new LinkedHashMap<String, Long>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxSize;
+        }
+    };
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CredentialCache() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+    }
+
+    /**
+     * Time a successful check is remembered. 0 disables the cache.
+     */
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param credential the stored credential the password was checked
+     *            against, or <code>null</code> if there is none
+     */
+    public boolean contains(String username, String password, String credential) {
+        if (ttlMillis <= 0) {
+            return false;
+        }
+        String entry = entry(username, password, credential);
+        synchronized (entries) {
+            Long expiry = entries.get(entry);
+            if (expiry != null) {
+                if (expiry.longValue() - System.nanoTime() > 0) {
+                    hits.incrementAndGet();
+                    return true;
+                }
+                entries.remove(entry);
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Remembers a successful check.
+     */
+    public void add(String username, String password, String credential) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        String entry = entry(username, password, credential);
+        Long expiry = Long.valueOf(System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+        synchronized (entries) {
+            entries.put(entry, expiry);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private String entry(String username, String password, String credential) {
+        Mac mac = macs.get();
+        mac.update(username.getBytes(UTF_8));
+        // separators keep ("ab", "c") apart from ("a", "bc")
+        mac.update((byte) 0);
+        mac.update(password.getBytes(UTF_8));
+        mac.update((byte) 0);
+        byte[] digest = mac.doFinal(credential == null ? new byte[0] : credential
+                .getBytes(UTF_8));
+        return new String(Hex.encodeHex(digest));
+    }
+
+}
@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.cxf.ws.security.sts.provider.metrics.QueryMetrics;
+
+/**
+ * {@link UserStore} and {@link AttributeStore} backed by a relational
+ * database. Passwords may be stored as {@link PasswordHash PBKDF2 hashes}
+ * or, unless disabled, in plain text.
+ * <p>
+ * Connections come from the configured {@link DataSource}, which is
+ * expected to be a pool that also caches prepared statements (such as
+ * commons-dbcp's <code>BasicDataSource</code> with
+ * <code>poolPreparedStatements</code>); every query is prepared with the
+ * same SQL string so the cached statement is hit. Attributes of several
+ * users are read with one <code>IN</code> query per <code>batchSize</code>
+ * users, the parameter list padded to a fixed length so that batches of any
+ * size share a single statement.
+ */
+public class JdbcUserStore implements UserStore, AttributeStore {
+
+    private DataSource dataSource;
+    private String passwordQuery = "SELECT password FROM users WHERE username = ?";
+    private String attributeQuery =
+        "SELECT username, name, value FROM user_attributes WHERE username IN ({0})";
+    private int batchSize = 16;
+    private String batchedAttributeQuery;
+
+    private final StoredPasswordVerifier passwords = new StoredPasswordVerifier();
+    private QueryMetrics passwordQueryMetrics = new QueryMetrics("password");
+    private QueryMetrics attributeQueryMetrics = new QueryMetrics("attributes");
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Query returning the stored password of the user given as the only
+     * parameter.
+     */
+    public void setPasswordQuery(String passwordQuery) {
+        this.passwordQuery = passwordQuery;
+    }
+
+    /**
+     * Query returning (username, attribute name, attribute value) rows;
+     * <code>{0}</code> is replaced with the parameter list of the
+     * usernames.
+     */
+    public synchronized void setAttributeQuery(String attributeQuery) {
+        this.attributeQuery = attributeQuery;
+        batchedAttributeQuery = null;
+    }
+
+    /**
+     * Number of users whose attributes are read with one query.
+     */
+    public synchronized void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        batchedAttributeQuery = null;
+    }
+
+    /**
+     * Whether passwords that are not hashed are accepted. Defaults to
+     * <code>true</code>.
+     */
+    public void setAllowPlaintextPasswords(boolean allowPlaintextPasswords) {
+        passwords.setAllowPlaintextPasswords(allowPlaintextPasswords);
+    }
+
+    /**
+     * Time a successful hash check is remembered. 0 disables the cache.
+     */
+    public void setCacheTtlMillis(long cacheTtlMillis) {
+        passwords.getCache().setTtlMillis(cacheTtlMillis);
+    }
+
+    public void setMaxCacheSize(int maxCacheSize) {
+        passwords.getCache().setMaxSize(maxCacheSize);
+    }
+
+    public void setPasswordQueryMetrics(QueryMetrics passwordQueryMetrics) {
+        this.passwordQueryMetrics = passwordQueryMetrics;
+    }
+
+    public QueryMetrics getPasswordQueryMetrics() {
+        return passwordQueryMetrics;
+    }
+
+    public void setAttributeQueryMetrics(QueryMetrics attributeQueryMetrics) {
+        this.attributeQueryMetrics = attributeQueryMetrics;
+    }
+
+    public QueryMetrics getAttributeQueryMetrics() {
+        return attributeQueryMetrics;
+    }
+
+    public AuthenticationResult authenticate(String username, String password) {
+        String stored = findPassword(username);
+        if (stored == null) {
+            return passwords.verifyUnknownUser(password);
+        }
+        return passwords.verify(username, password, stored);
+    }
+
+    public Map<String, List<String>> getAttributes(String username) {
+        Map<String, List<String>> attributes = getAttributes(
+                Collections.singleton(username)).get(username);
+        if (attributes == null) {
+            return Collections.emptyMap();
+        }
+        return attributes;
+    }
+
+    public Map<String, Map<String, List<String>>> getAttributes(Collection<String> usernames) {
+        Map<String, Map<String, List<String>>> result =
+            new HashMap<String, Map<String, List<String>>>();
+        if (usernames.isEmpty()) {
+            return result;
+        }
+        String sql;
+        int size;
+        synchronized (this) {
+            sql = getBatchedAttributeQuery();
+            size = batchSize;
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                Iterator<String> it = usernames.iterator();
+                while (it.hasNext()) {
+                    String first = it.next();
+                    statement.setString(1, first);
+                    for (int i = 2; i <= size; i++) {
+                        // pad with the first name to keep one statement
+                        statement.setString(i, it.hasNext() ? it.next() : first);
+                    }
+                    readAttributes(statement, result);
+                }
+            } finally {
+                statement.close();
+            }
+            succeeded = true;
+            return result;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Attribute query failed", e);
+        } finally {
+            close(connection);
+            record(attributeQueryMetrics, start, succeeded);
+        }
+    }
+
+    private String findPassword(String username) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            PreparedStatement statement = connection.prepareStatement(passwordQuery);
+            try {
+                statement.setString(1, username);
+                ResultSet rs = statement.executeQuery();
+                try {
+                    String password = rs.next() ? rs.getString(1) : null;
+                    succeeded = true;
+                    return password;
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Password query failed", e);
+        } finally {
+            close(connection);
+            record(passwordQueryMetrics, start, succeeded);
+        }
+    }
+
+    private static void readAttributes(PreparedStatement statement,
+            Map<String, Map<String, List<String>>> result) throws SQLException {
+        ResultSet rs = statement.executeQuery();
+        try {
+            while (rs.next()) {
+                String username = rs.getString(1);
+                String name = rs.getString(2);
+                Map<String, List<String>> attributes = result.get(username);
+                if (attributes == null) {
+                    attributes = new HashMap<String, List<String>>();
+                    result.put(username, attributes);
+                }
+                List<String> values = attributes.get(name);
+                if (values == null) {
+                    values = new ArrayList<String>(1);
+                    attributes.put(name, values);
+                }
+                values.add(rs.getString(3));
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    private synchronized String getBatchedAttributeQuery() {
+        if (batchedAttributeQuery == null) {
+            StringBuilder parameters = new StringBuilder(batchSize * 2);
+            for (int i = 0; i < batchSize; i++) {
+                parameters.append(i == 0 ? "?" : ",?");
+            }
+            batchedAttributeQuery = MessageFormat.format(attributeQuery,
+                    parameters.toString());
+        }
+        return batchedAttributeQuery;
+    }
+
+    private static void record(QueryMetrics metrics, long start,
+            boolean succeeded) {
+        long nanos = System.nanoTime() - start;
+        if (succeeded) {
+            metrics.recordSuccess(nanos);
+        } else {
+            metrics.recordFailure(nanos);
+        }
+    }
+
+    private static void close(Connection connection) {
+        if (connection != null) {
+            try {
+                // returns it to the pool
+                connection.close();
+            } catch (SQLException e) {
+                // the pool discards it
+            }
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.AuthenticationException;
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.cxf.ws.security.sts.provider.ldap.LdapContextPool;
+
+/**
+ * {@link UserStore} that authenticates users with an LDAP simple bind. The
+ * user's DN is built from <code>userDnPattern</code>, e.g.
+ * <code>uid={0},ou=people,dc=example,dc=com</code>.
+ * <p>
+ * Binds go over a {@link LdapContextPool}, so an issue request does not open
+ * a connection of its own. Successful binds are remembered for
+ * <code>cacheTtlMillis</code> in a {@link CredentialCache}; a password
+ * changed in the directory is picked up at the latest after the TTL.
+ * <p>
+ * A directory answers an unknown user and a wrong password alike, so
+ * failures are reported as {@link AuthenticationResult#WRONG_PASSWORD}.
+ */
+public class LdapUserStore implements UserStore, LdapUserStoreMBean {
+
+    private String url;
+    private String userDnPattern;
+    private int poolSize = 8;
+    private long connectTimeoutMillis = 5000L;
+    private long readTimeoutMillis = 5000L;
+    private long maxWaitMillis = 1000L;
+
+    private volatile LdapContextPool pool;
+    private final CredentialCache bindCache = new CredentialCache();
+
+    private final AtomicLong binds = new AtomicLong();
+    private final AtomicLong failedBinds = new AtomicLong();
+
+    /**
+     * LDAP server, e.g. <code>ldap://ldap.example.com:389</code>.
+     */
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * {@link MessageFormat} pattern of the user DN; <code>{0}</code> is
+     * replaced with the escaped username.
+     */
+    public void setUserDnPattern(String userDnPattern) {
+        this.userDnPattern = userDnPattern;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(long readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Maximum time to wait for a pooled connection.
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Time a successful bind is remembered. 0 disables the cache.
+     */
+    public void setCacheTtlMillis(long cacheTtlMillis) {
+        bindCache.setTtlMillis(cacheTtlMillis);
+    }
+
+    public void setMaxCacheSize(int maxCacheSize) {
+        bindCache.setMaxSize(maxCacheSize);
+    }
+
+    public synchronized void start() {
+        if (pool == null) {
+            pool = new LdapContextPool(url, poolSize);
+            pool.setConnectTimeoutMillis(connectTimeoutMillis);
+            pool.setReadTimeoutMillis(readTimeoutMillis);
+            pool.setMaxWaitMillis(maxWaitMillis);
+        }
+    }
+
+    public synchronized void stop() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        bindCache.clear();
+    }
+
+    public AuthenticationResult authenticate(String username, String password) {
+        // an empty password would be an anonymous bind, which always succeeds
+        if (username == null || username.length() == 0 || password == null
+                || password.length() == 0) {
+            return AuthenticationResult.WRONG_PASSWORD;
+        }
+
+        if (bindCache.contains(username, password, null)) {
+            return AuthenticationResult.SUCCESS;
+        }
+        if (!bind(username, password)) {
+            return AuthenticationResult.WRONG_PASSWORD;
+        }
+        bindCache.add(username, password, null);
+        return AuthenticationResult.SUCCESS;
+    }
+
+    private boolean bind(String username, String password) {
+        LdapContextPool contexts = getPool();
+        String dn = MessageFormat.format(userDnPattern, escapeDn(username));
+        binds.incrementAndGet();
+        LdapContext context;
+        try {
+            context = contexts.borrow(dn, password);
+        } catch (AuthenticationException e) {
+            failedBinds.incrementAndGet();
+            return false;
+        } catch (NamingException e) {
+            failedBinds.incrementAndGet();
+            throw new IllegalStateException("LDAP bind at " + url + " failed", e);
+        }
+        contexts.release(context);
+        return true;
+    }
+
+    private synchronized LdapContextPool getPool() {
+        if (pool == null) {
+            start();
+        }
+        return pool;
+    }
+
+    /**
+     * Escapes a value for use in a DN as defined in RFC 4514.
+     */
+    static String escapeDn(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case ',':
+            case '+':
+            case '"':
+            case '\\':
+            case '<':
+            case '>':
+            case ';':
+            case '=':
+                escaped.append('\\').append(c);
+                break;
+            case '\0':
+                escaped.append("\\00");
+                break;
+            case '#':
+                if (i == 0) {
+                    escaped.append('\\');
+                }
+                escaped.append(c);
+                break;
+            case ' ':
+                if (i == 0 || i == value.length() - 1) {
+                    escaped.append('\\');
+                }
+                escaped.append(c);
+                break;
+            default:
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    public int getOpenConnections() {
+        LdapContextPool contexts = pool;
+        return contexts == null ? 0 : contexts.getOpenCount();
+    }
+
+    public int getIdleConnections() {
+        LdapContextPool contexts = pool;
+        return contexts == null ? 0 : contexts.getIdleCount();
+    }
+
+    public int getBorrowedConnections() {
+        LdapContextPool contexts = pool;
+        return contexts == null ? 0 : contexts.getBorrowedCount();
+    }
+
+    /**
+     * Number of binds sent to the server.
+     */
+    public long getBindCount() {
+        return binds.get();
+    }
+
+    public long getFailedBindCount() {
+        return failedBinds.get();
+    }
+
+    public long getCacheHitCount() {
+        return bindCache.getHitCount();
+    }
+
+    public int getCacheSize() {
+        return bindCache.getSize();
+    }
+
+    public void clearCache() {
+        bindCache.clear();
+    }
+
+}
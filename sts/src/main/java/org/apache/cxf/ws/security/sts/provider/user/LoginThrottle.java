@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rejects logins for a username or from a client address that recently
+ * failed too often, before the password is checked or a token is created.
+ * Failures are counted per username and per address over a sliding window
+ * of <code>windowMillis</code>; a successful login clears the counter of
+ * the user, not the one of the address, so one valid account does not
+ * reset the limit for guessing others.
+ * <p>
+ * Both checks are a lookup in a lock-striped, size-bounded table. Under a
+ * spraying attack over many usernames the least recently failed ones are
+ * forgotten first, while the address counter still catches the source.
+ */
+public class LoginThrottle implements LoginThrottleMBean {
+
+    private int maxFailuresPerUser = 5;
+    private int maxFailuresPerAddress = 50;
+    private long windowMillis = 300000L;
+    private int stripes = 64;
+    private int maxTrackedKeys = 65536;
+
+    private volatile SlidingWindowCounters users;
+    private volatile SlidingWindowCounters addresses;
+
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Failed logins of one username within the window after which further
+     * attempts are rejected. 0 disables the check.
+     */
+    public void setMaxFailuresPerUser(int maxFailuresPerUser) {
+        this.maxFailuresPerUser = maxFailuresPerUser;
+    }
+
+    public int getMaxFailuresPerUser() {
+        return maxFailuresPerUser;
+    }
+
+    /**
+     * Failed logins from one client address within the window after which
+     * further attempts are rejected. 0 disables the check.
+     */
+    public void setMaxFailuresPerAddress(int maxFailuresPerAddress) {
+        this.maxFailuresPerAddress = maxFailuresPerAddress;
+    }
+
+    public int getMaxFailuresPerAddress() {
+        return maxFailuresPerAddress;
+    }
+
+    public synchronized void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+        users = null;
+        addresses = null;
+    }
+
+    public synchronized long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public synchronized void setStripes(int stripes) {
+        this.stripes = stripes;
+        users = null;
+        addresses = null;
+    }
+
+    /**
+     * Upper bound of the usernames, and separately of the addresses, that
+     * are tracked at a time.
+     */
+    public synchronized void setMaxTrackedKeys(int maxTrackedKeys) {
+        this.maxTrackedKeys = maxTrackedKeys;
+        users = null;
+        addresses = null;
+    }
+
+    /**
+     * @param address the client address, or <code>null</code> if unknown
+     * @return <code>true</code> if the login must be rejected without
+     *         checking the password
+     */
+    public boolean isBlocked(String username, String address) {
+        if (isExceeded(getUsers().get(username), maxFailuresPerUser)
+                || address != null
+                && isExceeded(getAddresses().get(address), maxFailuresPerAddress)) {
+            rejected.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void recordFailure(String username, String address) {
+        failures.incrementAndGet();
+        getUsers().increment(username);
+        if (address != null) {
+            getAddresses().increment(address);
+        }
+    }
+
+    public void recordSuccess(String username) {
+        getUsers().remove(username);
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getTrackedUsers() {
+        return getUsers().size();
+    }
+
+    public int getTrackedAddresses() {
+        return getAddresses().size();
+    }
+
+    private static boolean isExceeded(int failures, int limit) {
+        return limit > 0 && failures >= limit;
+    }
+
+    private SlidingWindowCounters getUsers() {
+        SlidingWindowCounters counters = users;
+        if (counters == null) {
+            synchronized (this) {
+                if (users == null) {
+                    users = createCounters();
+                }
+                counters = users;
+            }
+        }
+        return counters;
+    }
+
+    private SlidingWindowCounters getAddresses() {
+        SlidingWindowCounters counters = addresses;
+        if (counters == null) {
+            synchronized (this) {
+                if (addresses == null) {
+                    addresses = createCounters();
+                }
+                counters = addresses;
+            }
+        }
+        return counters;
+    }
+
+    private SlidingWindowCounters createCounters() {
+        return new SlidingWindowCounters(stripes, Math.max(1, maxTrackedKeys
+                / stripes), windowMillis);
+    }
+
+}
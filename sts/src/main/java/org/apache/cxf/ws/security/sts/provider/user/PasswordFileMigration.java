@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.cxf.staxutils.StaxUtils;
+
+/**
+ * Rewrites a tomcat-users.xml style file with {@link PasswordHash hashed}
+ * passwords for {@link XmlUserStore}. Everything else in the file is copied
+ * as it is, passwords that are already hashed are left alone, so the tool
+ * can be run again after users were added.
+ * <p>
+ * Usage: <code>PasswordFileMigration &lt;users file&gt; &lt;output file&gt;
+ * [iterations]</code>
+ */
+public final class PasswordFileMigration {
+
+    private static final String USER = "user";
+    private static final String PASSWORD = "password";
+
+    private PasswordFileMigration() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: PasswordFileMigration <users file> "
+                    + "<output file> [iterations]");
+            System.exit(1);
+        }
+        int iterations = args.length == 3 ? Integer.parseInt(args[2])
+                : PasswordHash.DEFAULT_ITERATIONS;
+
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            OutputStream out = new FileOutputStream(args[1]);
+            try {
+                int hashed = migrate(in, out, iterations);
+                System.out.println("Hashed " + hashed + " passwords");
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies the users file, replacing plain text passwords by hashes.
+     *
+     * @return the number of passwords that were hashed
+     */
+    public static int migrate(InputStream in, OutputStream out, int iterations) throws XMLStreamException {
+        XMLStreamReader reader = StaxUtils.createXMLStreamReader(in);
+        XMLStreamWriter writer = StaxUtils.createXMLStreamWriter(out, "UTF-8");
+        int hashed = 0;
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    hashed += copyStartElement(reader, writer, iterations);
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    writer.writeEndElement();
+                    break;
+                case XMLStreamReader.CHARACTERS:
+                case XMLStreamReader.SPACE:
+                    writer.writeCharacters(reader.getText());
+                    break;
+                case XMLStreamReader.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamReader.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                case XMLStreamReader.PROCESSING_INSTRUCTION:
+                    writer.writeProcessingInstruction(reader.getPITarget(), reader
+                            .getPIData());
+                    break;
+                default:
+                    break;
+                }
+            }
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+        return hashed;
+    }
+
+    private static int copyStartElement(XMLStreamReader reader,
+            XMLStreamWriter writer, int iterations) throws XMLStreamException {
+        writer.writeStartElement(nonNull(reader.getPrefix()), reader
+                .getLocalName(), nonNull(reader.getNamespaceURI()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            if (prefix == null || prefix.length() == 0) {
+                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+            } else {
+                writer.writeNamespace(prefix, reader.getNamespaceURI(i));
+            }
+        }
+
+        boolean user = USER.equals(reader.getLocalName());
+        int hashed = 0;
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = reader.getAttributeLocalName(i);
+            String value = reader.getAttributeValue(i);
+            if (user && PASSWORD.equals(name) && !PasswordHash.isHash(value)) {
+                value = PasswordHash.create(value, iterations);
+                hashed++;
+            }
+            writer.writeAttribute(nonNull(reader.getAttributePrefix(i)),
+                    nonNull(reader.getAttributeNamespace(i)), name, value);
+        }
+        return hashed;
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+}
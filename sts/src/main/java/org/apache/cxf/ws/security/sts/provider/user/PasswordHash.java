@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Salted PBKDF2 password hashes in the form
+ * <code>{PBKDF2}iterations$salt$hash</code>, salt and hash base64 encoded.
+ * PBKDF2WithHmacSHA1 is used as it is the variant every Java 6 runtime
+ * provides.
+ */
+public final class PasswordHash {
+
+    public static final String PREFIX = "{PBKDF2}";
+    public static final int DEFAULT_ITERATIONS = 20000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_BITS = 160;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHash() {
+    }
+
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    public static String create(String password, int iterations) {
+        byte[] salt = new byte[SALT_LENGTH];
+        synchronized (RANDOM) {
+            RANDOM.nextBytes(salt);
+        }
+        byte[] hash = pbkdf2(password, salt, iterations);
+        return PREFIX + iterations + '$' + encode(salt) + '$' + encode(hash);
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>stored</code> is not a
+     *             well-formed hash
+     */
+    public static boolean verify(String password, String stored) {
+        if (!isHash(stored)) {
+            throw new IllegalArgumentException("Not a password hash");
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed password hash");
+        }
+        int iterations;
+        try {
+            iterations = Integer.parseInt(parts[0]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed password hash", e);
+        }
+        byte[] salt = Base64.decodeBase64(parts[1].getBytes(US_ASCII));
+        byte[] expected = Base64.decodeBase64(parts[2].getBytes(US_ASCII));
+        return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt,
+                iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec)
+                    .getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return new String(Base64.encodeBase64(bytes), US_ASCII);
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event counters per key over a sliding window, e.g. failed logins per
+ * username. The window is approximated with two fixed buckets, the count of
+ * the previous bucket weighted by how much of it still overlaps the window,
+ * so a key needs a few fields instead of a timestamp per event.
+ * <p>
+ * Keys are spread over independently locked stripes. Each stripe holds at
+ * most <code>maxEntriesPerStripe</code> keys and drops the least recently
+ * used one when it is full, so memory stays bounded however many distinct
+ * keys are counted.
+ */
+class SlidingWindowCounters {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final long windowNanos;
+
+    SlidingWindowCounters(int stripeCount, int maxEntriesPerStripe, long windowMillis) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(maxEntriesPerStripe);
+        }
+        mask = size - 1;
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    /**
+     * Counts an event and returns the count within the window, the new
+     * event included.
+     */
+    int increment(String key) {
+        long now = System.nanoTime();
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Window window = stripe.get(key);
+            if (window == null) {
+                window = new Window(now);
+                stripe.put(key, window);
+            }
+            window.roll(now, windowNanos);
+            window.current++;
+            return window.estimate(now, windowNanos);
+        }
+    }
+
+    /**
+     * Returns the count of events within the window.
+     */
+    int get(String key) {
+        long now = System.nanoTime();
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Window window = stripe.get(key);
+            if (window == null) {
+                return 0;
+            }
+            window.roll(now, windowNanos);
+            int count = window.estimate(now, windowNanos);
+            if (count == 0) {
+                stripe.remove(key);
+            }
+            return count;
+        }
+    }
+
+    void remove(String key) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, Window> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static final class Window {
+
+        private long start;
+        private int previous;
+        private int current;
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        void roll(long now, long windowNanos) {
+            long elapsed = now - start;
+            if (elapsed >= 2 * windowNanos) {
+                previous = 0;
+                current = 0;
+                start = now;
+            } else if (elapsed >= windowNanos) {
+                previous = current;
+                current = 0;
+                start += windowNanos;
+            }
+        }
+
+        int estimate(long now, long windowNanos) {
+            double overlap = 1.0 - (double) (now - start) / windowNanos;
+            return current + (int) Math.ceil(previous * overlap);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+/**
+ * Checks a password against the credential a store keeps for the user:
+ * a {@link PasswordHash} through a {@link CredentialCache}, or, if allowed,
+ * a plain text password compared in constant time.
+ */
+class StoredPasswordVerifier {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // checked for unknown users, so they cost as much as known ones
+    private static final String DUMMY_HASH = PasswordHash.create(
+            "dummy", PasswordHash.DEFAULT_ITERATIONS);
+    private static final byte[] DUMMY_PASSWORD = "dummy".getBytes(UTF_8);
+
+    private boolean allowPlaintextPasswords = true;
+    // whether the store keeps hashes, as told by the store or last seen
+    private volatile Boolean hashedPasswords;
+    private volatile Boolean lastSeenHashed;
+    private final CredentialCache cache = new CredentialCache();
+
+    void setAllowPlaintextPasswords(boolean allowPlaintextPasswords) {
+        this.allowPlaintextPasswords = allowPlaintextPasswords;
+    }
+
+    /**
+     * Tells whether the store keeps hashed passwords, for stores that know
+     * all of them up front. Otherwise the kind of the last verified user's
+     * password is taken.
+     */
+    void setHashedPasswords(boolean hashedPasswords) {
+        this.hashedPasswords = Boolean.valueOf(hashedPasswords);
+    }
+
+    boolean isHashedPasswords() {
+        Boolean hashed = hashedPasswords;
+        if (hashed == null) {
+            hashed = lastSeenHashed;
+        }
+        return hashed == null ? !allowPlaintextPasswords : hashed.booleanValue();
+    }
+
+    CredentialCache getCache() {
+        return cache;
+    }
+
+    AuthenticationResult verify(String username, String password, String stored) {
+        boolean hashed = PasswordHash.isHash(stored);
+        lastSeenHashed = Boolean.valueOf(hashed);
+        if (password == null) {
+            return AuthenticationResult.WRONG_PASSWORD;
+        }
+        if (hashed) {
+            // the hash is part of the key, a changed password misses the cache
+            if (cache.contains(username, password, stored)) {
+                return AuthenticationResult.SUCCESS;
+            }
+            if (!PasswordHash.verify(password, stored)) {
+                return AuthenticationResult.WRONG_PASSWORD;
+            }
+            cache.add(username, password, stored);
+            return AuthenticationResult.SUCCESS;
+        }
+        if (!allowPlaintextPasswords
+                || !MessageDigest.isEqual(stored.getBytes(UTF_8), password
+                        .getBytes(UTF_8))) {
+            return AuthenticationResult.WRONG_PASSWORD;
+        }
+        return AuthenticationResult.SUCCESS;
+    }
+
+    /**
+     * Checks the password against a dummy credential of the kind the store
+     * keeps before reporting the user as unknown, so the response time does
+     * not tell whether a user exists.
+     */
+    AuthenticationResult verifyUnknownUser(String password) {
+        if (password == null) {
+            return AuthenticationResult.UNKNOWN_USER;
+        }
+        if (isHashedPasswords()) {
+            PasswordHash.verify(password, DUMMY_HASH);
+        } else {
+            MessageDigest.isEqual(DUMMY_PASSWORD, password.getBytes(UTF_8));
+        }
+        return AuthenticationResult.UNKNOWN_USER;
+    }
+
+}
@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.staxutils.StaxUtils;
+
+/**
+ * {@link UserStore} backed by a tomcat-users.xml style file
+ * (<code>&lt;user username="..." password="..."/&gt;</code>). The file is
+ * read once with StAX into an immutable hash index, so a lookup is a single
+ * map access regardless of the number of users.
+ * <p>
+ * If the file lives on the file system and a reload interval is set, the
+ * file is polled for changes and the index is rebuilt and swapped
+ * atomically; requests in progress keep using the index they started with.
+ * A file that fails to load leaves the previous index in place.
+ * <p>
+ * Passwords may be stored as {@link PasswordHash PBKDF2 hashes} (see
+ * {@link PasswordFileMigration}) or, unless disabled, in plain text. As a
+ * hash takes tens of milliseconds to check, successful checks are
+ * remembered in a {@link CredentialCache} for a short time.
+ */
+public class XmlUserStore implements UserStore, XmlUserStoreMBean {
+
+    private static final Log LOG = LogFactory.getLog(XmlUserStore.class
+            .getName());
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final String USER = "user";
+    private static final String USERNAME = "username";
+    private static final String PASSWORD = "password";
+
+    private String location = CLASSPATH_PREFIX + "/tomcat-users.xml";
+    private long reloadIntervalMillis;
+    private final StoredPasswordVerifier passwords = new StoredPasswordVerifier();
+
+    private volatile Map<String, String> users;
+    private volatile long lastModified;
+    private volatile long lastLength;
+    private volatile long lastLoadMillis;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failedLoads = new AtomicLong();
+
+    private ScheduledExecutorService watcher;
+
+    /**
+     * File system path of the users file, or a class path resource prefixed
+     * with <code>classpath:</code>. Defaults to
+     * <code>classpath:/tomcat-users.xml</code>.
+     */
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Interval in milliseconds in which the file is checked for changes. 0
+     * (the default) disables reloading. Class path resources are only
+     * watched if they are plain files.
+     */
+    public void setReloadIntervalMillis(long reloadIntervalMillis) {
+        this.reloadIntervalMillis = reloadIntervalMillis;
+    }
+
+    /**
+     * Whether passwords that are not hashed are accepted. Defaults to
+     * <code>true</code> so existing files keep working until they are
+     * migrated.
+     */
+    public void setAllowPlaintextPasswords(boolean allowPlaintextPasswords) {
+        passwords.setAllowPlaintextPasswords(allowPlaintextPasswords);
+    }
+
+    /**
+     * Time a successful hash check is remembered. 0 disables the cache.
+     */
+    public void setCacheTtlMillis(long cacheTtlMillis) {
+        passwords.getCache().setTtlMillis(cacheTtlMillis);
+    }
+
+    public void setMaxCacheSize(int maxCacheSize) {
+        passwords.getCache().setMaxSize(maxCacheSize);
+    }
+
+    /**
+     * Loads the users and starts watching the file.
+     */
+    public synchronized void start() {
+        getUsers();
+        if (reloadIntervalMillis > 0 && watcher == null && getFile() != null) {
+            watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "XmlUserStore watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            watcher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    reloadIfModified();
+                }
+            }, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    public AuthenticationResult authenticate(String username, String password) {
+        String expected = getUsers().get(username);
+        if (expected == null) {
+            return passwords.verifyUnknownUser(password);
+        }
+        return passwords.verify(username, password, expected);
+    }
+
+    /**
+     * Rebuilds the index from the file. If that fails the previous index is
+     * kept.
+     */
+    public void reload() {
+        try {
+            load();
+        } catch (RuntimeException e) {
+            LOG.warn("Can't reload users from " + location
+                    + ", keeping the previous ones", e);
+        }
+    }
+
+    public int getUserCount() {
+        Map<String, String> current = users;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Duration of the last successful load in milliseconds.
+     */
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    /**
+     * Modification time of the file the current index was built from, 0 for
+     * resources that are not plain files.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getFailedLoadCount() {
+        return failedLoads.get();
+    }
+
+    public long getCacheHitCount() {
+        return passwords.getCache().getHitCount();
+    }
+
+    public int getCacheSize() {
+        return passwords.getCache().getSize();
+    }
+
+    public void clearCache() {
+        passwords.getCache().clear();
+    }
+
+    void reloadIfModified() {
+        File file = getFile();
+        if (file != null
+                && (file.lastModified() != lastModified || file.length() != lastLength)) {
+            reload();
+        }
+    }
+
+    private Map<String, String> getUsers() {
+        Map<String, String> current = users;
+        if (current == null) {
+            synchronized (this) {
+                if (users == null) {
+                    load();
+                }
+                current = users;
+            }
+        }
+        return current;
+    }
+
+    private synchronized void load() {
+        long start = System.nanoTime();
+        File file = getFile();
+        // taken before reading, so a change during the read triggers a reload
+        long modified = file == null ? 0 : file.lastModified();
+        long length = file == null ? 0 : file.length();
+        Map<String, String> index;
+        try {
+            InputStream is = open(file);
+            try {
+                index = parse(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            failedLoads.incrementAndGet();
+            throw new IllegalStateException("Can't read users from " + location, e);
+        } catch (XMLStreamException e) {
+            failedLoads.incrementAndGet();
+            throw new IllegalStateException("Can't parse users from " + location, e);
+        }
+
+        int hashed = 0;
+        for (String password : index.values()) {
+            if (PasswordHash.isHash(password)) {
+                hashed++;
+            }
+        }
+        // a store being migrated counts as what most of its users have
+        passwords.setHashedPasswords(hashed * 2 > index.size());
+        users = Collections.unmodifiableMap(index);
+        lastModified = modified;
+        lastLength = length;
+        lastLoadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        loads.incrementAndGet();
+        LOG.info("Loaded " + index.size() + " users from " + location + " in "
+                + lastLoadMillis + " ms");
+    }
+
+    private static Map<String, String> parse(InputStream is) throws XMLStreamException {
+        Map<String, String> index = new HashMap<String, String>();
+        XMLStreamReader reader = StaxUtils.createXMLStreamReader(is);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamReader.START_ELEMENT
+                        && USER.equals(reader.getLocalName())) {
+                    String username = reader.getAttributeValue(null, USERNAME);
+                    String password = reader.getAttributeValue(null, PASSWORD);
+                    // like a linear scan, the first entry of a user wins
+                    if (username != null && password != null
+                            && !index.containsKey(username)) {
+                        index.put(username, password);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    private InputStream open(File file) throws IOException {
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        InputStream is = null;
+        if (location.startsWith(CLASSPATH_PREFIX)) {
+            is = XmlUserStore.class.getResourceAsStream(location
+                    .substring(CLASSPATH_PREFIX.length()));
+        }
+        if (is == null) {
+            throw new FileNotFoundException(location);
+        }
+        return is;
+    }
+
+    /**
+     * The file behind the location, or <code>null</code> if it is a class
+     * path resource inside an archive.
+     */
+    private File getFile() {
+        if (!location.startsWith(CLASSPATH_PREFIX)) {
+            return new File(location);
+        }
+        URL url = XmlUserStore.class.getResource(location
+                .substring(CLASSPATH_PREFIX.length()));
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+}
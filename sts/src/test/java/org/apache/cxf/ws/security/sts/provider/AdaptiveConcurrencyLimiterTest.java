@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testShedWhenQueueFull() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(2);
+        limiter.setMaxQueueSize(0);
+
+        assertTrue(limiter.acquire());
+        assertTrue(limiter.acquire());
+        assertFalse(limiter.acquire());
+
+        assertEquals(2, limiter.getAdmittedCount());
+        assertEquals(0, limiter.getQueuedCount());
+        assertEquals(1, limiter.getShedCount());
+    }
+
+    @Test
+    public void testShedWhenQueueWaitExpires() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(1);
+        limiter.setMaxQueueWaitMillis(10);
+
+        assertTrue(limiter.acquire());
+        assertFalse(limiter.acquire());
+
+        assertEquals(1, limiter.getQueuedCount());
+        assertEquals(1, limiter.getShedCount());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void testQueuedRequestAdmittedOnRelease() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(1);
+        limiter.setMaxQueueWaitMillis(5000);
+        assertTrue(limiter.acquire());
+
+        final AtomicBoolean acquired = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            public void run() {
+                try {
+                    acquired.set(limiter.acquire());
+                } catch (InterruptedException e) {
+                    // fails below
+                }
+                done.countDown();
+            }
+        };
+        waiter.start();
+        while (limiter.getWaiting() == 0) {
+            Thread.sleep(1);
+        }
+        limiter.release(MILLIS, true);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(acquired.get());
+        assertEquals(1, limiter.getQueuedCount());
+        assertEquals(0, limiter.getShedCount());
+    }
+
+    @Test
+    public void testLimitAdaptsToLatency() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(4);
+        limiter.setMinLimit(1);
+        limiter.setMaxLimit(10);
+
+        // fast responses at full utilization let the limit grow
+        for (int i = 0; i < 100; i++) {
+            acquireAll(limiter);
+            releaseAll(limiter, MILLIS);
+        }
+        assertEquals(10, limiter.getLimit());
+
+        // latency well above the baseline cuts it back
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(10 * MILLIS, true);
+        }
+        assertTrue(limiter.getLimit() < 10);
+    }
+
+    @Test
+    public void testDecreaseOncePerSampleWindow() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(10);
+        limiter.setSampleWindow(10);
+        assertTrue(limiter.acquire());
+        limiter.release(MILLIS, true);
+
+        // a burst of slow responses within one window
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(10 * MILLIS, true);
+        }
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void testFailuresAreNotSampled() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(10);
+        assertTrue(limiter.acquire());
+        limiter.release(10 * MILLIS, true);
+
+        // fast failures must not lower the latency baseline
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(MILLIS / 10, false);
+        }
+        assertTrue(limiter.acquire());
+        limiter.release(10 * MILLIS, true);
+
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private static void acquireAll(AdaptiveConcurrencyLimiter limiter) throws Exception {
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            assertTrue(limiter.acquire());
+        }
+    }
+
+    private static void releaseAll(AdaptiveConcurrencyLimiter limiter, long latency) {
+        while (limiter.getInFlight() > 0) {
+            limiter.release(latency, true);
+        }
+    }
+
+}
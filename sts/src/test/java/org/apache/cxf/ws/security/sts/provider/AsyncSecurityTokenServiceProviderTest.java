@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.handler.MessageContext;
+
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.verify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncSecurityTokenServiceProviderTest {
+
+    @Test
+    public void testWithoutContinuationRunsOnCallingThread() throws Exception {
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.expect(issueMock.issue(EasyMock.isA(RequestSecurityTokenType.class)))
+                .andReturn(new RequestSecurityTokenResponseCollectionType());
+        EasyMock.replay(issueMock);
+
+        // must not be used when there is no continuation
+        Executor executorMock = createMock(Executor.class);
+        EasyMock.replay(executorMock);
+
+        AsyncSecurityTokenServiceProvider provider = new AsyncSecurityTokenServiceProvider();
+        provider.setIssueOperation(issueMock);
+        provider.setExecutor(executorMock);
+
+        assertNotNull(provider.invoke(SecurityTokenServiceProviderTest
+                .createRequest("Issue")));
+        verify(issueMock);
+        verify(executorMock);
+    }
+
+    @Test
+    public void testSuspendAndResume() throws Exception {
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.expect(issueMock.issue(EasyMock.isA(RequestSecurityTokenType.class)))
+                .andReturn(new RequestSecurityTokenResponseCollectionType());
+        EasyMock.replay(issueMock);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TestContinuation continuation = new TestContinuation();
+        AsyncSecurityTokenServiceProvider provider = createProvider(issueMock,
+                executor, continuation);
+        try {
+            // first dispatch hands the operation to the executor and suspends
+            assertNull(provider.invoke(SecurityTokenServiceProviderTest
+                    .createRequest("Issue")));
+            assertEquals(60000L, continuation.timeout);
+
+            assertTrue(continuation.awaitResume(5000L));
+            // second dispatch by the transport returns the result
+            assertNotNull(provider.invoke(SecurityTokenServiceProviderTest
+                    .createRequest("Issue")));
+            verify(issueMock);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        BlockingIssueOperation issue = new BlockingIssueOperation();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TestContinuation continuation = new TestContinuation();
+        AsyncSecurityTokenServiceProvider provider = createProvider(issue,
+                executor, continuation);
+        provider.setTimeout(100L);
+        try {
+            assertNull(provider.invoke(SecurityTokenServiceProviderTest
+                    .createRequest("Issue")));
+            assertTrue(issue.started.await(5000L, TimeUnit.MILLISECONDS));
+            assertEquals(100L, continuation.timeout);
+
+            // the transport gives up waiting and dispatches again
+            assertFalse(continuation.awaitResume(continuation.timeout));
+            try {
+                provider.invoke(SecurityTokenServiceProviderTest
+                        .createRequest("Issue"));
+                fail("Timed out request must fail");
+            } catch (STSFaultException e) {
+                assertEquals("Request timed out", e.getFault().getFaultString());
+            }
+            // the operation is cancelled
+            assertTrue(issue.interrupted.await(5000L, TimeUnit.MILLISECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testServerBusy() throws Exception {
+        BlockingIssueOperation issue = new BlockingIssueOperation();
+        // one running, one queued
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+                new ThreadPoolExecutor.AbortPolicy());
+        try {
+            for (int i = 0; i < 2; i++) {
+                assertNull(createProvider(issue, executor, new TestContinuation())
+                        .invoke(SecurityTokenServiceProviderTest.createRequest("Issue")));
+            }
+            TestContinuation rejected = new TestContinuation();
+            try {
+                createProvider(issue, executor, rejected).invoke(
+                        SecurityTokenServiceProviderTest.createRequest("Issue"));
+                fail("Request beyond the queue must be rejected");
+            } catch (STSFaultException e) {
+                assertEquals("Server busy", e.getFault().getFaultString());
+            }
+            // rejected right away, not suspended
+            assertFalse(rejected.isPending());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static AsyncSecurityTokenServiceProvider createProvider(
+            IssueOperation issueOperation, Executor executor,
+            Continuation continuation) throws Exception {
+        ContinuationProvider continuationProvider = createMock(ContinuationProvider.class);
+        EasyMock.expect(continuationProvider.getContinuation())
+                .andStubReturn(continuation);
+        MessageContext messageContext = createMock(MessageContext.class);
+        EasyMock.expect(messageContext.get(ContinuationProvider.class.getName()))
+                .andStubReturn(continuationProvider);
+        WebServiceContext context = createMock(WebServiceContext.class);
+        EasyMock.expect(context.getMessageContext()).andStubReturn(messageContext);
+        EasyMock.replay(continuationProvider, messageContext, context);
+
+        AsyncSecurityTokenServiceProvider provider = new AsyncSecurityTokenServiceProvider();
+        provider.setIssueOperation(issueOperation);
+        provider.setExecutor(executor);
+        provider.setWebServiceContext(context);
+        return provider;
+    }
+
+    /**
+     * Issue operation that blocks until it is interrupted.
+     */
+    private static class BlockingIssueOperation implements IssueOperation {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        public RequestSecurityTokenResponseCollectionType issue(
+                RequestSecurityTokenType request) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return new RequestSecurityTokenResponseCollectionType();
+        }
+    }
+
+    /**
+     * Continuation that records suspend and resume the way the transport
+     * would see them.
+     */
+    private static class TestContinuation implements Continuation {
+
+        private final CountDownLatch resumed = new CountDownLatch(1);
+        private volatile boolean isNew = true;
+        private volatile boolean pending;
+        private volatile long timeout;
+        private volatile Object object;
+
+        public boolean suspend(long suspendTimeout) {
+            isNew = false;
+            pending = true;
+            timeout = suspendTimeout;
+            return true;
+        }
+
+        public void resume() {
+            pending = false;
+            resumed.countDown();
+        }
+
+        public void reset() {
+            isNew = true;
+            pending = false;
+            object = null;
+        }
+
+        public boolean isNew() {
+            return isNew;
+        }
+
+        public boolean isPending() {
+            return pending;
+        }
+
+        public boolean isResumed() {
+            return resumed.getCount() == 0;
+        }
+
+        public Object getObject() {
+            return object;
+        }
+
+        public void setObject(Object o) {
+            object = o;
+        }
+
+        boolean awaitResume(long millis) throws InterruptedException {
+            return resumed.await(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAtFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 10, 4, 60000);
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 10, 4, 60000);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testOldOutcomesLeaveTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 2, 60000);
+        for (int i = 0; i < 6; i++) {
+            breaker.recordSuccess();
+        }
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // 2 of the last 4 calls failed, 2 of all 8
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testSuccessfulTrialCloses() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 1, 50);
+        breaker.recordFailure();
+        assertFalse(breaker.allowRequest());
+        Thread.sleep(100);
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one trial at a time
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        // the failures before the trial are forgotten
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 1, 50);
+        breaker.recordFailure();
+        Thread.sleep(100);
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testFailingSince() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 4, 50);
+        assertEquals(0, breaker.getFailingSince());
+        long before = System.currentTimeMillis();
+        breaker.recordFailure();
+        long since = breaker.getFailingSince();
+        assertTrue(since >= before);
+        Thread.sleep(10);
+        breaker.recordFailure();
+        assertEquals(since, breaker.getFailingSince());
+        breaker.recordSuccess();
+        assertEquals(0, breaker.getFailingSince());
+    }
+
+    @Test
+    public void testFailingSinceStartOfSlowCall() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 4, 50);
+        long startedAt = System.currentTimeMillis() - 10000;
+        breaker.recordFailure(startedAt);
+        assertEquals(startedAt, breaker.getFailingSince());
+    }
+
+}
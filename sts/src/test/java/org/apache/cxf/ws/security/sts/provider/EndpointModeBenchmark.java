@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.SOAPBinding;
+
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.jaxws.EndpointImpl;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.ws.security.sts.provider.metrics.LatencyHistogram;
+import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
+import org.apache.cxf.ws.security.sts.provider.operation.RenewOperation;
+import org.apache.cxf.ws.security.sts.provider.operation.ValidateOperation;
+import org.junit.Test;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.ObjectFactory;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Publishes the payload-mode {@link SecurityTokenServiceProvider} and the
+ * typed {@link SecurityTokenServiceImpl} on local HTTP ports with the same
+ * stub operations and drives both with the same mix of Issue, Validate and
+ * Renew requests. The operations return immediately, so the numbers compare
+ * the (un)marshalling and dispatch cost of the two endpoint modes. Not part
+ * of the regular test run, start it with
+ * <code>mvn test -Dtest=EndpointModeBenchmark</code>.
+ */
+public class EndpointModeBenchmark {
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 20000;
+
+    private static final String WSDL_LOCATION = "model/ws-trust-1.4-service.wsdl";
+    private static final String WSDL_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/wsdl";
+    private static final QName SERVICE_NAME = new QName(WSDL_NAMESPACE,
+            "SecurityTokenServiceProvider");
+    private static final QName PORT_NAME = new QName(WSDL_NAMESPACE,
+            "SecurityTokenServiceSOAP");
+    private static final String PROVIDER_ADDRESS = "http://localhost:9091/sts/provider";
+    private static final String SEI_ADDRESS = "http://localhost:9092/sts/sei";
+
+    /** 70% Issue, 20% Validate, 10% Renew */
+    private static final String[] REQUEST_MIX = {"Issue", "Issue", "Issue",
+        "Issue", "Issue", "Issue", "Issue", "Validate", "Validate", "Renew"};
+
+    private static final ObjectFactory WS_TRUST_FACTORY = new ObjectFactory();
+
+    private static final IssueOperation ISSUE = new IssueOperation() {
+        public RequestSecurityTokenResponseCollectionType issue(
+                RequestSecurityTokenType request) {
+            RequestSecurityTokenResponseCollectionType collection =
+                new RequestSecurityTokenResponseCollectionType();
+            collection.getRequestSecurityTokenResponse().add(createResponse());
+            return collection;
+        }
+    };
+
+    private static final ValidateOperation VALIDATE = new ValidateOperation() {
+        public RequestSecurityTokenResponseType validate(
+                RequestSecurityTokenType request) {
+            return createResponse();
+        }
+    };
+
+    private static final RenewOperation RENEW = new RenewOperation() {
+        public RequestSecurityTokenResponseType renew(
+                RequestSecurityTokenType request) {
+            return createResponse();
+        }
+    };
+
+    @Test
+    public void benchmarkEndpointModes() throws Exception {
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(ISSUE);
+        provider.setValidateOperation(VALIDATE);
+        provider.setRenewOperation(RENEW);
+        EndpointImpl providerEndpoint = publish(provider, PROVIDER_ADDRESS);
+        providerEndpoint.getOutInterceptors().add(
+                new StreamingResponseOutInterceptor());
+
+        SecurityTokenServiceImpl sei = new SecurityTokenServiceImpl();
+        sei.setIssueOperation(ISSUE);
+        sei.setValidateOperation(VALIDATE);
+        sei.setRenewOperation(RENEW);
+        EndpointImpl seiEndpoint = publish(sei, SEI_ADDRESS);
+
+        try {
+            run("Provider", PROVIDER_ADDRESS);
+            run("SEI", SEI_ADDRESS);
+            // second round, so neither mode profits from running last
+            run("Provider", PROVIDER_ADDRESS);
+            run("SEI", SEI_ADDRESS);
+        } finally {
+            providerEndpoint.stop();
+            seiEndpoint.stop();
+        }
+    }
+
+    private static EndpointImpl publish(Object implementor, String address) {
+        EndpointImpl endpoint = new EndpointImpl(BusFactory.getDefaultBus(),
+                implementor);
+        endpoint.setWsdlLocation(WSDL_LOCATION);
+        endpoint.publish(address);
+        return endpoint;
+    }
+
+    private static void run(String mode, String address) throws Exception {
+        Map<String, Dispatch<Source>> dispatches = createDispatches(address);
+        for (int i = 0; i < WARMUP; i++) {
+            invoke(dispatches, REQUEST_MIX[i % REQUEST_MIX.length]);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long requestStart = System.nanoTime();
+            invoke(dispatches, REQUEST_MIX[i % REQUEST_MIX.length]);
+            histogram.recordNanos(System.nanoTime() - requestStart);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(mode + ": " + (ITERATIONS * 1000000000L / elapsed)
+                + " requests/s, p50 " + histogram.getValueAtPercentile(50.0)
+                + "us, p99 " + histogram.getValueAtPercentile(99.0)
+                + "us, p999 " + histogram.getValueAtPercentile(99.9) + "us");
+    }
+
+    private static void invoke(Map<String, Dispatch<Source>> dispatches,
+            String requestType) throws Exception {
+        Source response = dispatches.get(requestType).invoke(
+                SecurityTokenServiceProviderTest.createRequest(requestType));
+        // read the whole response, as a real client would
+        assertNotNull(StaxUtils.read(StaxUtils.createXMLStreamReader(response)));
+    }
+
+    private static Map<String, Dispatch<Source>> createDispatches(String address) {
+        Service service = Service.create(SERVICE_NAME);
+        service.addPort(PORT_NAME, SOAPBinding.SOAP11HTTP_BINDING, address);
+        Map<String, Dispatch<Source>> dispatches = new HashMap<String, Dispatch<Source>>();
+        for (String requestType : new String[] {"Issue", "Validate", "Renew"}) {
+            Dispatch<Source> dispatch = service.createDispatch(PORT_NAME,
+                    Source.class, Service.Mode.PAYLOAD);
+            // the SEI endpoint selects the operation by SOAPAction
+            dispatch.getRequestContext().put(
+                    BindingProvider.SOAPACTION_USE_PROPERTY, Boolean.TRUE);
+            dispatch.getRequestContext().put(
+                    BindingProvider.SOAPACTION_URI_PROPERTY,
+                    SecurityTokenServiceProviderTest.WSTRUST_13_NAMESPACE
+                            + "/RST/" + requestType);
+            dispatches.put(requestType, dispatch);
+        }
+        return dispatches;
+    }
+
+    private static RequestSecurityTokenResponseType createResponse() {
+        RequestSecurityTokenResponseType response = new RequestSecurityTokenResponseType();
+        response.getAny().add(WS_TRUST_FACTORY
+                .createTokenType("urn:oasis:names:tc:SAML:2.0:assertion"));
+        return response;
+    }
+
+}
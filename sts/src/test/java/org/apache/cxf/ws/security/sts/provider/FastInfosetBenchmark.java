@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
+import com.sun.xml.fastinfoset.stax.StAXDocumentSerializer;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.cxf.helpers.DOMUtils;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.ws.security.sts.provider.token.Saml2TokenProvider;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares plain XML with Fast Infoset for an Issue request with a
+ * holder-of-key certificate and its response: encoded size, serialization
+ * (DOM to bytes) and parsing (bytes to DOM, as SAAJ does on the STS). Not
+ * part of the regular test run, start it with
+ * <code>mvn test -Dtest=FastInfosetBenchmark</code>.
+ */
+public class FastInfosetBenchmark {
+
+    private static final int WARMUP = 5000;
+    private static final int ITERATIONS = 50000;
+
+    private static final String WSTRUST_13_NAMESPACE = SecurityTokenServiceProviderTest.WSTRUST_13_NAMESPACE;
+    private static final String RST = "<wst:RequestSecurityToken xmlns:wst=\""
+            + WSTRUST_13_NAMESPACE + "\">"
+            + "<wst:TokenType>urn:oasis:names:tc:SAML:2.0:assertion</wst:TokenType>"
+            + "<wst:RequestType>" + WSTRUST_13_NAMESPACE + "/Issue</wst:RequestType>"
+            + "<wst:KeyType>" + WSTRUST_13_NAMESPACE + "/PublicKey</wst:KeyType>"
+            + "<wst:UseKey><ds:KeyInfo xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">"
+            + "<ds:X509Data><ds:X509Certificate>%s</ds:X509Certificate></ds:X509Data>"
+            + "</ds:KeyInfo></wst:UseKey>"
+            + "</wst:RequestSecurityToken>";
+    private static final String RSTRC = "<wst:RequestSecurityTokenResponseCollection xmlns:wst=\""
+            + WSTRUST_13_NAMESPACE + "\"><wst:RequestSecurityTokenResponse>"
+            + "<wst:TokenType>urn:oasis:names:tc:SAML:2.0:assertion</wst:TokenType>"
+            + "<wst:RequestedSecurityToken/>"
+            + "</wst:RequestSecurityTokenResponse></wst:RequestSecurityTokenResponseCollection>";
+
+    @Test
+    public void benchmarkFastInfoset() throws Exception {
+        X509Certificate certificate = loadCertificate();
+
+        Document request = DOMUtils.readXml(new StringReader(String.format(RST,
+                new String(Base64.encodeBase64(certificate.getEncoded()), "UTF-8"))));
+        Document response = createResponse(certificate);
+
+        compare("Issue request", request);
+        compare("Issue response", response);
+    }
+
+    private static void compare(String name, Document document) throws Exception {
+        byte[] xml = serializeXml(document);
+        byte[] fastInfoset = serializeFastInfoset(document);
+        // both encodings carry the same infoset
+        assertEquals(new String(serializeXml(parseXml(xml)), "UTF-8"),
+                new String(serializeXml(parseFastInfoset(fastInfoset)), "UTF-8"));
+
+        for (int i = 0; i < WARMUP; i++) {
+            parseXml(serializeXml(document));
+            parseFastInfoset(serializeFastInfoset(document));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializeXml(document);
+        }
+        long xmlSerialize = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseXml(xml);
+        }
+        long xmlParse = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializeFastInfoset(document);
+        }
+        long fiSerialize = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseFastInfoset(fastInfoset);
+        }
+        long fiParse = (System.nanoTime() - start) / ITERATIONS;
+
+        System.out.println(name + " XML: " + xml.length + " bytes, serialize "
+                + xmlSerialize + " ns, parse " + xmlParse + " ns");
+        System.out.println(name + " Fast Infoset: " + fastInfoset.length
+                + " bytes, serialize " + fiSerialize + " ns, parse " + fiParse
+                + " ns");
+    }
+
+    private static byte[] serializeXml(Document document) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLStreamWriter writer = StaxUtils.createXMLStreamWriter(out, "UTF-8");
+        StaxUtils.writeDocument(document, writer, false);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private static byte[] serializeFastInfoset(Document document) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLStreamWriter writer = new StAXDocumentSerializer(out);
+        StaxUtils.writeDocument(document, writer, false);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private static Document parseXml(byte[] xml) throws Exception {
+        return StaxUtils.read(StaxUtils.createXMLStreamReader(
+                new ByteArrayInputStream(xml), "UTF-8"));
+    }
+
+    private static Document parseFastInfoset(byte[] fastInfoset) throws Exception {
+        XMLStreamReader reader = new StAXDocumentParser(new ByteArrayInputStream(
+                fastInfoset));
+        return StaxUtils.read(reader);
+    }
+
+    private static Document createResponse(X509Certificate certificate) throws Exception {
+        Document response = DOMUtils.readXml(new StringReader(RSTRC));
+        Element assertion = new Saml2TokenProvider().createToken(certificate);
+        Element requestedToken = (Element) response.getElementsByTagNameNS(
+                WSTRUST_13_NAMESPACE, "RequestedSecurityToken").item(0);
+        requestedToken.appendChild(response.importNode(assertion, true));
+        return response;
+    }
+
+    private static X509Certificate loadCertificate() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(FastInfosetBenchmark.class.getResourceAsStream("/stsstore.jks"),
+                "stsspass".toCharArray());
+        return (X509Certificate) keyStore.getCertificate("myclientkey");
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.io.StringWriter;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Test;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.ObjectFactory;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JAXBMarshallerPoolTest {
+
+    private static final String JAXB_CONTEXT_PATH = "org.oasis_open.docs.ws_sx.ws_trust._200512";
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        JAXBMarshallerPool pool = new JAXBMarshallerPool(
+                JAXBContext.newInstance(JAXB_CONTEXT_PATH), 1);
+
+        Unmarshaller first = pool.borrowUnmarshaller();
+        Unmarshaller second = pool.borrowUnmarshaller();
+        assertEquals(2, pool.getUnmarshallerMisses());
+
+        pool.returnUnmarshaller(first);
+        // pool is bounded, the second instance is dropped
+        pool.returnUnmarshaller(second);
+        assertEquals(1, pool.getIdleUnmarshallers());
+
+        assertSame(first, pool.borrowUnmarshaller());
+        assertEquals(1, pool.getUnmarshallerHits());
+    }
+
+    @Test
+    public void testPooledJAXBSourceReturnsMarshaller() throws Exception {
+        JAXBMarshallerPool pool = new JAXBMarshallerPool(
+                JAXBContext.newInstance(JAXB_CONTEXT_PATH), 4);
+        PooledJAXBSource source = new PooledJAXBSource(pool, new ObjectFactory()
+                .createRequestSecurityTokenResponseCollection(
+                        new RequestSecurityTokenResponseCollectionType()));
+
+        StringWriter writer = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(source,
+                new StreamResult(writer));
+
+        assertTrue(writer.toString().contains(
+                "RequestSecurityTokenResponseCollection"));
+        assertEquals(1, pool.getMarshallerMisses());
+        assertEquals(1, pool.getIdleMarshallers());
+    }
+
+    @Test
+    public void testPooledJAXBSourceWritesToStreamWriter() throws Exception {
+        JAXBMarshallerPool pool = new JAXBMarshallerPool(
+                JAXBContext.newInstance(JAXB_CONTEXT_PATH), 4);
+        PooledJAXBSource source = new PooledJAXBSource(pool, new ObjectFactory()
+                .createRequestSecurityTokenResponseCollection(
+                        new RequestSecurityTokenResponseCollectionType()));
+
+        StringWriter out = new StringWriter();
+        XMLStreamWriter streamWriter = XMLOutputFactory.newInstance()
+                .createXMLStreamWriter(out);
+        streamWriter.writeStartDocument();
+        streamWriter.writeStartElement("Body");
+
+        source.writeTo(streamWriter);
+        streamWriter.writeEndElement();
+        streamWriter.writeEndDocument();
+        streamWriter.flush();
+
+        String xml = out.toString();
+        assertTrue(xml.contains("<Body><"));
+        assertTrue(xml.contains("RequestSecurityTokenResponseCollection"));
+        // written as a fragment, no second XML declaration
+        assertFalse(xml.substring(xml.indexOf("<Body>")).contains("<?xml"));
+        assertEquals(1, pool.getIdleMarshallers());
+    }
+
+}
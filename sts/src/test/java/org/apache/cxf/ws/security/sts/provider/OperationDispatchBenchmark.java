@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
+import org.junit.Test;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the reflective operation lookup that <code>invoke</code> used to
+ * perform per request with the prebuilt handler table, keyed by the
+ * RequestType taken from the request pre-scan. Not part of the
+ * regular test run, start it with
+ * <code>mvn test -Dtest=OperationDispatchBenchmark</code>.
+ */
+public class OperationDispatchBenchmark {
+
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 2000000;
+    private static final String ISSUE = SecurityTokenServiceProviderTest.WSTRUST_13_NAMESPACE
+            + "/Issue";
+
+    private static final RequestSecurityTokenResponseCollectionType RESPONSE =
+        new RequestSecurityTokenResponseCollectionType();
+
+    private final IssueOperation issueOperation = new IssueOperation() {
+        @Override
+        public RequestSecurityTokenResponseCollectionType issue(
+                RequestSecurityTokenType request) {
+            return RESPONSE;
+        }
+    };
+
+    @Test
+    public void benchmarkDispatch() throws Exception {
+        RequestSecurityTokenType rst = unmarshal();
+
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(issueOperation);
+        Map<String, Object> legacyMap = new HashMap<String, Object>();
+        legacyMap.put(ISSUE, issueOperation);
+
+        runReflective(legacyMap, rst, WARMUP);
+        long start = System.nanoTime();
+        runReflective(legacyMap, rst, ITERATIONS);
+        long reflective = System.nanoTime() - start;
+
+        runTable(provider, rst, WARMUP);
+        start = System.nanoTime();
+        runTable(provider, rst, ITERATIONS);
+        long table = System.nanoTime() - start;
+
+        System.out.println("Reflective dispatch: " + (reflective / ITERATIONS)
+                + " ns/op");
+        System.out.println("Handler table dispatch: " + (table / ITERATIONS)
+                + " ns/op");
+    }
+
+    private static void runTable(SecurityTokenServiceProvider provider,
+            RequestSecurityTokenType rst, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            assertNotNull(provider.findOperationHandler(ISSUE).handle(rst));
+        }
+    }
+
+    private static void runReflective(Map<String, Object> operationMap,
+            RequestSecurityTokenType rst, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            assertNotNull(reflectiveDispatch(operationMap, rst));
+        }
+    }
+
+    /**
+     * The lookup <code>SecurityTokenServiceProvider.invoke</code> performed
+     * before the handler table was introduced.
+     */
+    private static Object reflectiveDispatch(Map<String, Object> operationMap,
+            RequestSecurityTokenType rst) throws Exception {
+        Object operationImpl = null;
+        List<?> objectList = rst.getAny();
+        for (int i = 0; i < objectList.size(); i++) {
+            Object obj = objectList.get(i);
+            if (obj instanceof JAXBElement) {
+                QName qname = ((JAXBElement<?>) obj).getName();
+                if (qname.equals(new QName(
+                        SecurityTokenServiceProviderTest.WSTRUST_13_NAMESPACE,
+                        "RequestType"))) {
+                    operationImpl = operationMap.get(((JAXBElement<?>) obj)
+                            .getValue().toString());
+                    break;
+                }
+            }
+        }
+        Method[] methods = operationImpl.getClass().getMethods();
+        for (int x = 0; x < methods.length; x++) {
+            Class<?>[] paramClass = methods[x].getParameterTypes();
+            if (paramClass.length == 1 && paramClass[0].equals(rst.getClass())) {
+                return methods[x].invoke(operationImpl, rst);
+            }
+        }
+        return null;
+    }
+
+    private static RequestSecurityTokenType unmarshal() throws Exception {
+        JAXBContext context = JAXBContext
+                .newInstance("org.oasis_open.docs.ws_sx.ws_trust._200512");
+        JAXBElement<?> element = (JAXBElement<?>) context.createUnmarshaller()
+                .unmarshal(SecurityTokenServiceProviderTest.createRequest("Issue"));
+        return (RequestSecurityTokenType) element.getValue();
+    }
+
+}
@@ -19,10 +19,30 @@
 
 package org.apache.cxf.ws.security.sts.provider;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.security.auth.callback.UnsupportedCallbackException;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.phase.PhaseInterceptorChain;
 import org.apache.ws.security.WSPasswordCallback;
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 
@@ -62,6 +82,49 @@ public class ProviderPasswordCallbackTest {
         ppc.handle(c);
     }
 
+    @Test
+    public void testNothingBoundOutsideOfCxf() throws Exception {
+        ProviderPasswordCallback ppc = new ProviderPasswordCallback();
+        ppc.handle(new WSPasswordCallback[] {
+            new WSPasswordCallback("test", "password", "",
+                    WSPasswordCallback.USERNAME_TOKEN_UNKNOWN)
+        });
+        // nothing left behind for the next request on this thread
+        assertNull(UsernameTokenCredentials.getCurrent());
+        assertNull(ppc.resetUsername());
+    }
+
+    @Test
+    public void testMessageWinsOverBoundCredentials() throws Exception {
+        final ProviderPasswordCallback ppc = new ProviderPasswordCallback();
+        final String[] seen = new String[1];
+        SortedSet<Phase> phases = new TreeSet<Phase>();
+        phases.add(new Phase(Phase.PRE_PROTOCOL, 1));
+        PhaseInterceptorChain chain = new PhaseInterceptorChain(phases);
+        chain.add(new AbstractPhaseInterceptor<Message>(Phase.PRE_PROTOCOL) {
+            public void handleMessage(Message message) {
+                try {
+                    ppc.handle(new WSPasswordCallback[] {
+                        new WSPasswordCallback("current", "password", "",
+                                WSPasswordCallback.USERNAME_TOKEN_UNKNOWN)
+                    });
+                } catch (Exception e) {
+                    throw new Fault(e);
+                }
+                seen[0] = ppc.resetUsername();
+            }
+        });
+
+        UsernameTokenCredentials.bind(new UsernameTokenCredentials("stale",
+                "password", null));
+        try {
+            chain.doIntercept(new MessageImpl());
+        } finally {
+            UsernameTokenCredentials.unbind();
+        }
+        assertEquals("current", seen[0]);
+    }
+
     @Test
     public void testHandleMessage() {
         ProviderPasswordCallback ppc = new ProviderPasswordCallback();
@@ -69,4 +132,98 @@ public class ProviderPasswordCallbackTest {
         res = ppc.resetUsername();
         assertNull(res);
     }
+
+    @Test
+    public void testConcurrentRequestsKeepTheirCredentials() throws Exception {
+        final ProviderPasswordCallback ppc = new ProviderPasswordCallback();
+        final ExecutorService workers = Executors.newFixedThreadPool(4);
+        final AtomicInteger mismatches = new AtomicInteger();
+        final AtomicInteger checked = new AtomicInteger();
+
+        // WSS4J and the operation run in one interceptor chain per request;
+        // half of the requests continue on a worker thread, like
+        // AsyncSecurityTokenServiceProvider does
+        final AbstractPhaseInterceptor<Message> interceptor =
+            new AbstractPhaseInterceptor<Message>(Phase.PRE_PROTOCOL) {
+                public void handleMessage(Message message) {
+                    String username = (String) message.get("test.username");
+                    String password = "pw-" + username;
+                    try {
+                        ppc.handle(new WSPasswordCallback[] {
+                            new WSPasswordCallback(username, password, "",
+                                    WSPasswordCallback.USERNAME_TOKEN_UNKNOWN)
+                        });
+                        Thread.yield();
+                        String[] seen;
+                        if (username.hashCode() % 2 == 0) {
+                            seen = resetOnCurrentThread(ppc);
+                        } else {
+                            seen = resetOnWorker(ppc, workers);
+                        }
+                        if (!username.equals(seen[0]) || !password.equals(seen[1])) {
+                            mismatches.incrementAndGet();
+                        }
+                        checked.incrementAndGet();
+                    } catch (Exception e) {
+                        throw new Fault(e);
+                    }
+                }
+            };
+
+        int threads = 32;
+        final int requests = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            final int client = t;
+            results.add(clients.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    start.await();
+                    SortedSet<Phase> phases = new TreeSet<Phase>();
+                    phases.add(new Phase(Phase.PRE_PROTOCOL, 1));
+                    for (int i = 0; i < requests; i++) {
+                        PhaseInterceptorChain chain = new PhaseInterceptorChain(phases);
+                        chain.add(interceptor);
+                        Message message = new MessageImpl();
+                        message.put("test.username", "user" + client + "-" + i);
+                        chain.doIntercept(message);
+                        if (message.getContent(Exception.class) != null) {
+                            throw message.getContent(Exception.class);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(threads * requests, checked.get());
+        assertEquals(0, mismatches.get());
+    }
+
+    private static String[] resetOnCurrentThread(ProviderPasswordCallback ppc) {
+        return new String[] {ppc.resetUsername(), ppc.resetPassword()};
+    }
+
+    private static String[] resetOnWorker(final ProviderPasswordCallback ppc,
+            ExecutorService workers) throws Exception {
+        final UsernameTokenCredentials credentials = UsernameTokenCredentials.getCurrent();
+        return workers.submit(new Callable<String[]>() {
+            public String[] call() {
+                UsernameTokenCredentials.bind(credentials);
+                try {
+                    return resetOnCurrentThread(ppc);
+                } finally {
+                    UsernameTokenCredentials.unbind();
+                }
+            }
+        }).get();
+    }
 }
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.cxf.staxutils.StaxUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RequestLimitsTest {
+
+    private static final String DSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+    @Test
+    public void testPayloadWithinLimitIsRead() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxPayloadBytes(100);
+        InputStream in = new LimitedInputStream(new ByteArrayInputStream(
+                new byte[100]), limits);
+        assertEquals(100, drain(in));
+        assertEquals(0, limits.getRejectedCount());
+    }
+
+    @Test
+    public void testOversizedPayloadIsRejected() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxPayloadBytes(100);
+        InputStream in = new LimitedInputStream(new ByteArrayInputStream(
+                new byte[101]), limits);
+        try {
+            drain(in);
+            fail("RequestLimitExceededException expected");
+        } catch (RequestLimitExceededException e) {
+            assertEquals(1, limits.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testDeepNestingIsRejected() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxElementDepth(3);
+        read("<a><b><c/></b></a>", limits);
+        try {
+            read("<a><b><c><d/></c></b></a>", limits);
+            fail("RequestLimitExceededException expected");
+        } catch (RequestLimitExceededException e) {
+            assertEquals(1, limits.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testTooManyAttributesAreRejected() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxAttributeCount(2);
+        read("<a x='1' y='2' xmlns:p='urn:p' xmlns:q='urn:q'/>", limits);
+        try {
+            read("<a x='1' y='2' z='3'/>", limits);
+            fail("RequestLimitExceededException expected");
+        } catch (RequestLimitExceededException e) {
+            assertEquals(1, limits.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testLongTextIsRejected() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxTextLength(10);
+        read("<a><b>0123456789</b><b>0123456789</b></a>", limits);
+        try {
+            read("<a>0123456789<![CDATA[x]]></a>", limits);
+            fail("RequestLimitExceededException expected");
+        } catch (RequestLimitExceededException e) {
+            assertEquals(1, limits.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testLargeCertificateIsRejected() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxCertificateLength(8);
+        // the same text is fine outside of ds:X509Certificate
+        read("<a><X509Certificate>MIIBIjANBgkq</X509Certificate></a>", limits);
+        try {
+            read("<a><ds:X509Certificate xmlns:ds='" + DSIG_NS
+                    + "'>MIIBIjANBgkq</ds:X509Certificate></a>", limits);
+            fail("RequestLimitExceededException expected");
+        } catch (RequestLimitExceededException e) {
+            assertEquals(1, limits.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testElementTextIsChecked() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxTextLength(4);
+        XMLStreamReader reader = new LimitingXMLStreamReader(StaxUtils
+                .createXMLStreamReader(new StringReader("<a>01234</a>")), limits);
+        reader.nextTag();
+        try {
+            reader.getElementText();
+            fail("RequestLimitExceededException expected");
+        } catch (RequestLimitExceededException e) {
+            assertEquals(1, limits.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testDisabledLimits() throws Exception {
+        RequestLimits limits = new RequestLimits();
+        limits.setMaxElementDepth(0);
+        limits.setMaxTextLength(0);
+        StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            xml.append("<a>");
+        }
+        char[] text = new char[100000];
+        Arrays.fill(text, 'x');
+        xml.append(text);
+        for (int i = 0; i < 200; i++) {
+            xml.append("</a>");
+        }
+        read(xml.toString(), limits);
+        assertEquals(0, limits.getRejectedCount());
+    }
+
+    private static void read(String xml, RequestLimits limits) throws Exception {
+        XMLStreamReader reader = new LimitingXMLStreamReader(StaxUtils
+                .createXMLStreamReader(new StringReader(xml)), limits);
+        while (reader.hasNext()) {
+            reader.next();
+        }
+    }
+
+    private static long drain(InputStream in) throws Exception {
+        byte[] buffer = new byte[16];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+
+}
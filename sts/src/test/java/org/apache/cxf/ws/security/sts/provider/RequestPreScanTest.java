@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RequestPreScanTest {
+
+    private static final String WST = "http://docs.oasis-open.org/ws-sx/ws-trust/200512";
+
+    private static RequestPreScan scan(String xml) throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newInstance()
+                .createXMLStreamReader(new StringReader(xml));
+        return RequestPreScan.scan(reader);
+    }
+
+    @Test
+    public void testNestedElementsAreSkipped() throws Exception {
+        RequestPreScan preScan = scan("<wst:RequestSecurityToken xmlns:wst=\"" + WST + "\">"
+                + "<wst:UseKey><ds:KeyInfo xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">"
+                + "<wst:RequestType>nested</wst:RequestType>"
+                + "</ds:KeyInfo></wst:UseKey>"
+                + "<wst:TokenType> urn:oasis:names:tc:SAML:1.0:assertion </wst:TokenType>"
+                + "<wst:RequestType>" + WST + "/Issue</wst:RequestType>"
+                + "</wst:RequestSecurityToken>");
+
+        assertEquals(WST + "/Issue", preScan.getRequestType());
+        assertEquals("urn:oasis:names:tc:SAML:1.0:assertion", preScan.getTokenType());
+    }
+
+    @Test
+    public void testMissingElements() throws Exception {
+        RequestPreScan preScan = scan("<wst:RequestSecurityToken xmlns:wst=\"" + WST + "\">"
+                + "<wst:RequestType xmlns:wst=\"urn:other\">" + WST + "/Issue</wst:RequestType>"
+                + "</wst:RequestSecurityToken>");
+
+        assertNull(preScan.getRequestType());
+        assertNull(preScan.getTokenType());
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import javax.xml.soap.SOAPFault;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class STSFaultFactoryTest {
+
+    @Test
+    public void testFaultFromSTSException() throws Exception {
+        STSFaultException fe = new STSFaultFactory().createFault(
+                new STSException("Wrong password",
+                        STSErrorCode.FAILED_AUTHENTICATION));
+
+        SOAPFault fault = fe.getFault();
+        assertEquals(STSErrorCode.FAILED_AUTHENTICATION, fe.getErrorCode());
+        assertEquals("FailedAuthentication", fault.getFaultCodeAsQName().getLocalPart());
+        assertEquals("Wrong password", fault.getFaultString());
+        assertEquals("FailedAuthentication", fault.getDetail().getTextContent().trim());
+        assertEquals(0, fe.getStackTrace().length);
+    }
+
+    @Test
+    public void testFaultFromOtherException() throws Exception {
+        STSFaultException fe = new STSFaultFactory().createFault(
+                new IllegalStateException(null, new Exception("cause")));
+
+        assertEquals(STSErrorCode.REQUEST_FAILED, fe.getErrorCode());
+        assertEquals("cause", fe.getFault().getFaultString());
+    }
+
+    @Test
+    public void testStacklessSTSException() {
+        STSException rejection = new STSException("test",
+                STSErrorCode.FAILED_AUTHENTICATION, false);
+        assertEquals(0, rejection.getStackTrace().length);
+        assertEquals(0, rejection.fillInStackTrace().getStackTrace().length);
+        assertEquals(0, new RequestLimitExceededException("test")
+                .getStackTrace().length);
+
+        STSException failure = new STSException("test");
+        assertEquals("testStacklessSTSException",
+                failure.getStackTrace()[0].getMethodName());
+    }
+
+}
@@ -19,7 +19,20 @@
 
 package org.apache.cxf.ws.security.sts.provider;
 
+import java.util.Collections;
+
+import org.apache.cxf.ws.security.sts.provider.metrics.OperationMetrics;
+import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
+import org.easymock.EasyMock;
 import org.junit.Test;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.verify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 public class SecurityTokenServiceImplTest {
 
@@ -27,4 +40,51 @@ public class SecurityTokenServiceImplTest {
     public void doTest() {
 
     }
+
+    @Test
+    public void testFailureReportedAsWSTrustFault() throws Exception {
+        RequestSecurityTokenType request = new RequestSecurityTokenType();
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.expect(issueMock.issue(request)).andThrow(
+                new STSException("Wrong password",
+                        STSErrorCode.FAILED_AUTHENTICATION));
+        EasyMock.replay(issueMock);
+
+        OperationMetrics metrics = new OperationMetrics("Issue");
+        SecurityTokenServiceImpl sei = new SecurityTokenServiceImpl();
+        sei.setIssueOperation(issueMock);
+        sei.setOperationMetrics(Collections.singletonMap(
+                "http://docs.oasis-open.org/ws-sx/ws-trust/200512/Issue", metrics));
+
+        try {
+            sei.issue(request);
+            fail("STSFaultException should be thrown");
+        } catch (STSFaultException e) {
+            assertEquals(STSErrorCode.FAILED_AUTHENTICATION, e.getErrorCode());
+        }
+        assertEquals(1, metrics.getRequestCount());
+        assertEquals(1, metrics.getErrorCount());
+        verify(issueMock);
+    }
+
+    @Test
+    public void testFaultPassedThroughUnchanged() throws Exception {
+        RequestSecurityTokenType request = new RequestSecurityTokenType();
+        STSFaultException fault = new STSFaultFactory().createFault(
+                STSErrorCode.INVALID_REQUEST, "Invalid request");
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.expect(issueMock.issue(request)).andThrow(fault);
+        EasyMock.replay(issueMock);
+
+        SecurityTokenServiceImpl sei = new SecurityTokenServiceImpl();
+        sei.setIssueOperation(issueMock);
+
+        try {
+            sei.issue(request);
+            fail("STSFaultException should be thrown");
+        } catch (STSFaultException e) {
+            assertSame(fault, e);
+        }
+        verify(issueMock);
+    }
 }
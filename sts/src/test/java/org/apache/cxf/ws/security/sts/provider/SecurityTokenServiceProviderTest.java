@@ -19,13 +19,187 @@
 
 package org.apache.cxf.ws.security.sts.provider;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.apache.cxf.ws.security.sts.provider.metrics.OperationMetrics;
+import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
+import org.apache.cxf.ws.security.sts.provider.operation.ValidateOperation;
+import org.easymock.EasyMock;
 import org.junit.Test;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.verify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
 public class SecurityTokenServiceProviderTest {
 
+    static final String WSTRUST_13_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512";
+
+    static final String RST_TEMPLATE = "<wst:RequestSecurityToken xmlns:wst=\""
+            + WSTRUST_13_NAMESPACE + "\">"
+            + "<wst:TokenType>urn:oasis:names:tc:SAML:2.0:assertion</wst:TokenType>"
+            + "<wst:RequestType>" + WSTRUST_13_NAMESPACE + "/%s</wst:RequestType>"
+            + "</wst:RequestSecurityToken>";
+
+    static Source createRequest(String requestType) {
+        return new StreamSource(new StringReader(String.format(RST_TEMPLATE,
+                requestType)));
+    }
+
     @Test
     public void doTest() {
 
     }
 
+    @Test
+    public void testIssueDispatch() throws Exception {
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.expect(issueMock.issue(EasyMock.isA(RequestSecurityTokenType.class)))
+                .andReturn(new RequestSecurityTokenResponseCollectionType());
+        EasyMock.replay(issueMock);
+
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(issueMock);
+
+        assertNotNull(provider.invoke(createRequest("Issue")));
+        verify(issueMock);
+    }
+
+    @Test
+    public void testIssueDispatchFromByteStream() throws Exception {
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.expect(issueMock.issue(EasyMock.isA(RequestSecurityTokenType.class)))
+                .andReturn(new RequestSecurityTokenResponseCollectionType());
+        EasyMock.replay(issueMock);
+
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(issueMock);
+
+        // read once for the pre-scan and once more for unmarshalling
+        Source request = new StreamSource(new ByteArrayInputStream(String
+                .format(RST_TEMPLATE, "Issue").getBytes("UTF-8")));
+        assertNotNull(provider.invoke(request));
+        verify(issueMock);
+    }
+
+    @Test
+    public void testValidateDispatch() throws Exception {
+        ValidateOperation validateMock = createMock(ValidateOperation.class);
+        EasyMock.expect(validateMock.validate(EasyMock.isA(RequestSecurityTokenType.class)))
+                .andReturn(new RequestSecurityTokenResponseType());
+        EasyMock.replay(validateMock);
+
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setValidateOperation(validateMock);
+
+        assertNotNull(provider.invoke(createRequest("Validate")));
+        verify(validateMock);
+    }
+
+    @Test
+    public void testUnsupportedTokenTypeRejectedBeforeIssue() throws Exception {
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.replay(issueMock);
+
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(issueMock);
+        provider.setSupportedTokenTypes(Arrays
+                .asList("urn:oasis:names:tc:SAML:1.0:assertion"));
+
+        try {
+            provider.invoke(createRequest("Issue"));
+            fail("SOAPFaultException should be thrown");
+        } catch (SOAPFaultException e) {
+            // expected
+        }
+        verify(issueMock);
+    }
+
+    @Test
+    public void testUnsupportedOperation() throws Exception {
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.replay(issueMock);
+
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(issueMock);
+
+        try {
+            provider.invoke(createRequest("Renew"));
+            fail("SOAPFaultException should be thrown");
+        } catch (SOAPFaultException e) {
+            // expected
+        }
+        verify(issueMock);
+    }
+
+    @Test
+    public void testRequestShedWhenLimitReached() throws Exception {
+        IssueOperation issueMock = createMock(IssueOperation.class);
+        EasyMock.replay(issueMock);
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(1);
+        limiter.setMaxQueueSize(0);
+        // another request holds the only slot
+        limiter.acquire();
+
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(issueMock);
+        provider.setConcurrencyLimiters(Collections.singletonMap(
+                WSTRUST_13_NAMESPACE + "/Issue", limiter));
+
+        try {
+            provider.invoke(createRequest("Issue"));
+            fail("SOAPFaultException should be thrown");
+        } catch (SOAPFaultException e) {
+            assertEquals("RequestFailed", e.getFault().getFaultCodeAsQName()
+                    .getLocalPart());
+        }
+        assertEquals(1, limiter.getShedCount());
+        verify(issueMock);
+    }
+
+    @Test
+    public void testOperationMetricsRecorded() throws Exception {
+        ValidateOperation validateMock = createMock(ValidateOperation.class);
+        EasyMock.expect(validateMock.validate(EasyMock.isA(RequestSecurityTokenType.class)))
+                .andReturn(new RequestSecurityTokenResponseType());
+        EasyMock.expect(validateMock.validate(EasyMock.isA(RequestSecurityTokenType.class)))
+                .andReturn(null);
+        EasyMock.replay(validateMock);
+
+        OperationMetrics metrics = new OperationMetrics("Validate");
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setValidateOperation(validateMock);
+        provider.setOperationMetrics(Collections.singletonMap(
+                WSTRUST_13_NAMESPACE + "/Validate", metrics));
+
+        provider.invoke(createRequest("Validate"));
+        try {
+            provider.invoke(createRequest("Validate"));
+            fail("SOAPFaultException should be thrown");
+        } catch (SOAPFaultException e) {
+            // expected
+        }
+
+        assertEquals(2, metrics.getRequestCount());
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(2, metrics.getLatency().getCount());
+        assertEquals(2, metrics.getDelegateLatency().getCount());
+        verify(validateMock);
+    }
+
 }
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallersShareOneExecution() throws Exception {
+        final SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Integer> leader = executor.submit(new Callable<Integer>() {
+                public Integer call() {
+                    return singleFlight.execute("key", new Callable<Integer>() {
+                        public Integer call() throws Exception {
+                            started.countDown();
+                            release.await();
+                            return executions.incrementAndGet();
+                        }
+                    });
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Callable<Integer> follower = new Callable<Integer>() {
+                public Integer call() {
+                    return singleFlight.execute("key", new Callable<Integer>() {
+                        public Integer call() {
+                            return executions.incrementAndGet();
+                        }
+                    });
+                }
+            };
+            Future<Integer> first = executor.submit(follower);
+            Future<Integer> second = executor.submit(follower);
+            while (singleFlight.getCoalescedCount() < 2) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals(Integer.valueOf(1), leader.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, singleFlight.getExecutionCount());
+        assertEquals(2, singleFlight.getCoalescedCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testCompletedResultIsNotCached() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<Integer> computation = new Callable<Integer>() {
+            public Integer call() {
+                return executions.incrementAndGet();
+            }
+        };
+
+        assertEquals(Integer.valueOf(1), singleFlight.execute("key", computation));
+        assertEquals(Integer.valueOf(2), singleFlight.execute("key", computation));
+        assertEquals(0, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    public void testExceptionIsRethrown() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<String, Integer>();
+        try {
+            singleFlight.execute("key", new Callable<Integer>() {
+                public Integer call() {
+                    throw new STSException("failed");
+                }
+            });
+            fail("STSException should be thrown");
+        } catch (STSException e) {
+            // expected
+        }
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+}
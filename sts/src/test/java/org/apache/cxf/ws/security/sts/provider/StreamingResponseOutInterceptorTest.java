@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.ws.security.sts.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.SOAPBinding;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.jaxws.EndpointImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.ws.security.sts.provider.operation.IssueOperation;
+import org.junit.Test;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.ObjectFactory;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseCollectionType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenResponseType;
+import org.oasis_open.docs.ws_sx.ws_trust._200512.RequestSecurityTokenType;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Publishes the payload-mode {@link SecurityTokenServiceProvider} with the
+ * {@link StreamingResponseOutInterceptor} and another interceptor that reads
+ * the response payload into a DOM before it is written, as handlers or
+ * security interceptors do.
+ */
+public class StreamingResponseOutInterceptorTest {
+
+    private static final String WSDL_LOCATION = "model/ws-trust-1.4-service.wsdl";
+    private static final String WSDL_NAMESPACE = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/wsdl";
+    private static final QName SERVICE_NAME = new QName(WSDL_NAMESPACE,
+            "SecurityTokenServiceProvider");
+    private static final QName PORT_NAME = new QName(WSDL_NAMESPACE,
+            "SecurityTokenServiceSOAP");
+    private static final String ADDRESS = "http://localhost:9093/sts/streaming";
+    private static final String TOKEN_TYPE = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+    @Test
+    public void testPayloadConsumerSeesWholeDocument() throws Exception {
+        SecurityTokenServiceProvider provider = new SecurityTokenServiceProvider();
+        provider.setIssueOperation(new IssueOperation() {
+            public RequestSecurityTokenResponseCollectionType issue(
+                    RequestSecurityTokenType request) {
+                RequestSecurityTokenResponseType response =
+                    new RequestSecurityTokenResponseType();
+                response.getAny().add(new ObjectFactory().createTokenType(TOKEN_TYPE));
+                RequestSecurityTokenResponseCollectionType collection =
+                    new RequestSecurityTokenResponseCollectionType();
+                collection.getRequestSecurityTokenResponse().add(response);
+                return collection;
+            }
+        });
+        EndpointImpl endpoint = new EndpointImpl(BusFactory.getDefaultBus(),
+                provider);
+        endpoint.setWsdlLocation(WSDL_LOCATION);
+        endpoint.publish(ADDRESS);
+        PayloadCapturingInterceptor capturing = new PayloadCapturingInterceptor();
+        endpoint.getOutInterceptors().add(capturing);
+        endpoint.getOutInterceptors().add(new StreamingResponseOutInterceptor());
+
+        try {
+            Service service = Service.create(SERVICE_NAME);
+            service.addPort(PORT_NAME, SOAPBinding.SOAP11HTTP_BINDING, ADDRESS);
+            Dispatch<Source> dispatch = service.createDispatch(PORT_NAME,
+                    Source.class, Service.Mode.PAYLOAD);
+            dispatch.getRequestContext().put(
+                    BindingProvider.SOAPACTION_USE_PROPERTY, Boolean.TRUE);
+            dispatch.getRequestContext().put(
+                    BindingProvider.SOAPACTION_URI_PROPERTY,
+                    SecurityTokenServiceProviderTest.WSTRUST_13_NAMESPACE
+                            + "/RST/Issue");
+
+            for (int i = 0; i < 2; i++) {
+                Source response = dispatch.invoke(
+                        SecurityTokenServiceProviderTest.createRequest("Issue"));
+                assertResponse(StaxUtils.read(
+                        StaxUtils.createXMLStreamReader(response)));
+            }
+
+            // the consumer got the full payload, not an empty document
+            assertEquals(2, capturing.documents.size());
+            for (Document document : capturing.documents) {
+                assertResponse(document);
+            }
+        } finally {
+            endpoint.stop();
+        }
+    }
+
+    private static void assertResponse(Document document) {
+        Element collection = document.getDocumentElement();
+        assertEquals("RequestSecurityTokenResponseCollection",
+                collection.getLocalName());
+        // written exactly once
+        assertEquals(1, collection.getElementsByTagNameNS(
+                SecurityTokenServiceProviderTest.WSTRUST_13_NAMESPACE,
+                "RequestSecurityTokenResponse").getLength());
+        assertEquals(TOKEN_TYPE, collection.getElementsByTagNameNS(
+                SecurityTokenServiceProviderTest.WSTRUST_13_NAMESPACE,
+                "TokenType").item(0).getTextContent());
+    }
+
+    private static class PayloadCapturingInterceptor
+        extends AbstractPhaseInterceptor<Message> {
+
+        private final List<Document> documents = new ArrayList<Document>();
+
+        PayloadCapturingInterceptor() {
+            super(Phase.PRE_MARSHAL);
+        }
+
+        public void handleMessage(Message message) throws Fault {
+            for (Object obj : MessageContentsList.getContentsList(message)) {
+                if (obj instanceof Source) {
+                    DOMResult result = new DOMResult();
+                    try {
+                        TransformerFactory.newInstance().newTransformer()
+                            .transform((Source) obj, result);
+                    } catch (Exception e) {
+                        throw new Fault(e);
+                    }
+                    synchronized (documents) {
+                        documents.add((Document) result.getNode());
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CRLCacheTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private KeyPair caKeys;
+    private X509Certificate ca;
+    private TestCrlServer server;
+    private String url;
+    private CRLCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        caKeys = TestCertificates.generateKeyPair();
+        ca = TestCertificates.createRoot("CN=Test CA", caKeys);
+        server = new TestCrlServer();
+        url = server.getUrl("/ca.crl");
+        cache = new CRLCache();
+    }
+
+    @After
+    public void tearDown() {
+        cache.stop();
+        server.stop();
+    }
+
+    @Test
+    public void testCachedUntilNextUpdate() throws Exception {
+        server.setCrl(createCrl(System.currentTimeMillis() + HOUR));
+        RevocationIndex index = cache.getRevocationIndex(url);
+        assertSame(index, cache.getRevocationIndex(url));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getDownloadMetrics().getQueryCount());
+    }
+
+    @Test
+    public void testRefreshAheadOfExpiry() throws Exception {
+        server.setCrl(createCrl(System.currentTimeMillis() + HOUR));
+        cache.setRefreshAheadMillis(2 * HOUR);
+        cache.setRetryIntervalMillis(0);
+        RevocationIndex index = cache.getRevocationIndex(url);
+
+        X509CRL revoking = createCrl(System.currentTimeMillis() + HOUR,
+                BigInteger.TEN);
+        server.setCrl(revoking);
+        // served from the cache while the new CRL is downloaded
+        assertSame(index, cache.getRevocationIndex(url));
+        waitFor(new Condition() {
+            public boolean isMet() throws Exception {
+                return cache.getRevocationIndex(url).isRevoked(BigInteger.TEN);
+            }
+        });
+        assertEquals(2, server.getDownloadCount());
+    }
+
+    @Test
+    public void testConditionalRefresh() throws Exception {
+        // the CA is late with the next CRL
+        server.setCrl(createCrl(System.currentTimeMillis() - 1000));
+        cache.setRetryIntervalMillis(0);
+        final RevocationIndex index = cache.getRevocationIndex(url);
+        assertSame(index, cache.getRevocationIndex(url));
+        waitFor(new Condition() {
+            public boolean isMet() {
+                return cache.getNotModifiedCount() > 0;
+            }
+        });
+        assertSame(index, cache.getRevocationIndex(url));
+        assertEquals(1, server.getDownloadCount());
+        assertTrue(cache.getStaleServedCount() >= 2);
+        assertEquals(1, cache.getExpiredCount());
+    }
+
+    @Test
+    public void testGracePeriod() throws Exception {
+        server.setCrl(createCrl(System.currentTimeMillis() - 1000));
+        cache.setRetryIntervalMillis(0);
+        RevocationIndex index = cache.getRevocationIndex(url);
+
+        server.setFailureStatus(500);
+        assertSame(index, cache.getRevocationIndex(url));
+        waitFor(new Condition() {
+            public boolean isMet() {
+                return cache.getRefreshFailureCount() > 0;
+            }
+        });
+        assertSame(index, cache.getRevocationIndex(url));
+
+        cache.setGracePeriodMillis(0);
+        try {
+            cache.getRevocationIndex(url);
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDownloadFailure() throws Exception {
+        server.setFailureStatus(404);
+        try {
+            cache.getRevocationIndex(url);
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getDownloadMetrics().getErrorCount());
+    }
+
+    @Test
+    public void testVerifyWithCache() throws Exception {
+        X509Certificate cert = TestCertificates.createCertificate("CN=Client",
+                TestCertificates.generateKeyPair().getPublic(), ca,
+                caKeys.getPrivate(), System.currentTimeMillis() + HOUR, url);
+        server.setCrl(createCrl(System.currentTimeMillis() + HOUR));
+        CRLVerifier.verifyCertificateCRLs(cert, cache);
+        CRLVerifier.verifyCertificateCRLs(cert, cache);
+        assertEquals(1, server.getRequestCount());
+
+        cache.clear();
+        server.setCrl(createCrl(System.currentTimeMillis() + HOUR, cert
+                .getSerialNumber()));
+        try {
+            CRLVerifier.verifyCertificateCRLs(cert, cache);
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+    }
+
+    private X509CRL createCrl(long nextUpdate, BigInteger... revoked) throws Exception {
+        return TestCertificates.createCrl(ca, caKeys.getPrivate(), nextUpdate,
+                revoked);
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet() throws Exception;
+    }
+
+}
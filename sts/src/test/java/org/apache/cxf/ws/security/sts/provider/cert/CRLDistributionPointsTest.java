@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Entry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Downloads from several distribution points of one CRL, an HTTP server and
+ * an LDAP directory behind a proxy, both of which can be slowed down.
+ */
+public class CRLDistributionPointsTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private KeyPair caKeys;
+    private X509Certificate ca;
+    private TestCrlServer httpServer;
+    private InMemoryDirectoryServer ldapServer;
+    private TestDelayProxy ldapProxy;
+    private String httpUrl;
+    private String ldapUrl;
+    private CRLCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        caKeys = TestCertificates.generateKeyPair();
+        ca = TestCertificates.createRoot("CN=Test CA", caKeys);
+        X509CRL crl = TestCertificates.createCrl(ca, caKeys.getPrivate(),
+                System.currentTimeMillis() + HOUR, BigInteger.TEN);
+
+        httpServer = new TestCrlServer();
+        httpServer.setCrl(crl);
+        httpUrl = httpServer.getUrl("/ca.crl");
+
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(
+                "dc=example,dc=com");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig(
+                "default", 0));
+        config.setSchema(null);
+        ldapServer = new InMemoryDirectoryServer(config);
+        ldapServer.add("dn: dc=example,dc=com", "objectClass: top",
+                "objectClass: domain", "dc: example");
+        Entry entry = new Entry("cn=TestCA,dc=example,dc=com");
+        entry.addAttribute("objectClass", "top", "cRLDistributionPoint");
+        entry.addAttribute("cn", "TestCA");
+        entry.addAttribute("certificateRevocationList;binary", crl.getEncoded());
+        ldapServer.add(entry);
+        ldapServer.startListening();
+        ldapProxy = new TestDelayProxy(ldapServer.getListenPort());
+        ldapUrl = "ldap://127.0.0.1:" + ldapProxy.getPort()
+                + "/cn=TestCA,dc=example,dc=com";
+
+        cache = new CRLCache();
+        cache.setTimeoutMillis(5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.stop();
+        ldapProxy.stop();
+        ldapServer.shutDown(true);
+        httpServer.stop();
+    }
+
+    @Test
+    public void testHedgedRequestToSecondMirror() throws Exception {
+        httpServer.setDelayMillis(3000);
+        cache.setHedgeDelayMillis(100);
+        long start = System.currentTimeMillis();
+        RevocationIndex index = cache.getRevocationIndex(Arrays.asList(httpUrl,
+                ldapUrl));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(index.isRevoked(BigInteger.TEN));
+        assertEquals(1, cache.getHedgedCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testNoHedgeWhileFirstMirrorIsFast() throws Exception {
+        ldapProxy.setDelayMillis(3000);
+        cache.setHedgeDelayMillis(1000);
+        cache.getRevocationIndex(Arrays.asList(httpUrl, ldapUrl));
+        assertEquals(0, cache.getHedgedCount());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testFailedMirrorIsSkipped() throws Exception {
+        httpServer.setFailureStatus(503);
+        // a failure asks the next mirror without waiting for the hedge delay
+        cache.setHedgeDelayMillis(10000);
+        long start = System.currentTimeMillis();
+        RevocationIndex index = cache.getRevocationIndex(Arrays.asList(httpUrl,
+                ldapUrl));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(index.isRevoked(BigInteger.TEN));
+        assertEquals(0, cache.getHedgedCount());
+    }
+
+    @Test
+    public void testAllMirrorsAtOnce() throws Exception {
+        ldapProxy.setDelayMillis(3000);
+        long start = System.currentTimeMillis();
+        cache.getRevocationIndex(Arrays.asList(ldapUrl, httpUrl));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, httpServer.getRequestCount());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        httpServer.setDelayMillis(3000);
+        ldapProxy.setDelayMillis(3000);
+        cache.setTimeoutMillis(300);
+        long start = System.currentTimeMillis();
+        try {
+            cache.getRevocationIndex(Arrays.asList(httpUrl, ldapUrl));
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, cache.getTimeoutCount());
+    }
+
+    @Test
+    public void testAllMirrorsFail() throws Exception {
+        httpServer.setFailureStatus(404);
+        ldapServer.delete("cn=TestCA,dc=example,dc=com");
+        try {
+            cache.getRevocationIndex(Arrays.asList(httpUrl, ldapUrl));
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+        assertEquals(0, cache.getTimeoutCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testCachedMirrorAnswers() throws Exception {
+        cache.getRevocationIndex(ldapUrl);
+        httpServer.setDelayMillis(3000);
+        cache.getRevocationIndex(Arrays.asList(httpUrl, ldapUrl));
+        assertEquals(0, httpServer.getRequestCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+}
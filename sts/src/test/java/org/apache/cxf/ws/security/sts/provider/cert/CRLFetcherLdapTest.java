@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.naming.NameNotFoundException;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Entry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * LDAP downloads over pooled connections. The directory is reached through
+ * a proxy that counts the connections.
+ */
+public class CRLFetcherLdapTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private InMemoryDirectoryServer server;
+    private TestDelayProxy proxy;
+    private String caUrl;
+    private String subCaUrl;
+    private CRLFetcher fetcher;
+
+    @Before
+    public void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(
+                "dc=example,dc=com");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig(
+                "default", 0));
+        config.setSchema(null);
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: dc=example,dc=com", "objectClass: top",
+                "objectClass: domain", "dc: example");
+        addCrl("Test CA", BigInteger.ONE);
+        addCrl("Test Sub CA", BigInteger.TEN);
+        server.startListening();
+        proxy = new TestDelayProxy(server.getListenPort());
+
+        String base = "ldap://127.0.0.1:" + proxy.getPort() + "/";
+        caUrl = base + "cn=Test%20CA,dc=example,dc=com";
+        subCaUrl = base + "cn=Test%20Sub%20CA,dc=example,dc=com";
+        fetcher = new CRLFetcher();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fetcher.close();
+        proxy.stop();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void testConnectionSharedByDistributionPoints() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(fetch(caUrl).getRevokedCertificate(BigInteger.ONE));
+            assertNotNull(fetch(subCaUrl).getRevokedCertificate(BigInteger.TEN));
+        }
+        assertEquals(1, proxy.getConnectionCount());
+        assertEquals(1, fetcher.getLdapConnectionCount());
+    }
+
+    @Test
+    public void testConnectionsClosed() throws Exception {
+        fetch(caUrl);
+        fetcher.close();
+        assertEquals(0, fetcher.getLdapConnectionCount());
+        waitForOpenConnections(0);
+    }
+
+    @Test
+    public void testIdleConnectionEvicted() throws Exception {
+        fetcher.setLdapMaxIdleMillis(50);
+        fetch(caUrl);
+        Thread.sleep(100);
+        fetch(caUrl);
+        assertEquals(2, proxy.getConnectionCount());
+        assertEquals(1, fetcher.getLdapConnectionCount());
+        waitForOpenConnections(1);
+    }
+
+    @Test
+    public void testDroppedConnectionReplaced() throws Exception {
+        fetch(caUrl);
+        proxy.closeConnections();
+        waitForOpenConnections(0);
+        assertNotNull(fetch(caUrl).getRevokedCertificate(BigInteger.ONE));
+        assertEquals(2, proxy.getConnectionCount());
+        assertEquals(1, fetcher.getLdapConnectionCount());
+    }
+
+    @Test
+    public void testMissingEntryKeepsConnection() throws Exception {
+        try {
+            fetch("ldap://127.0.0.1:" + proxy.getPort()
+                    + "/cn=Unknown,dc=example,dc=com");
+            fail("NameNotFoundException should be thrown");
+        } catch (NameNotFoundException e) {
+            // expected
+        }
+        fetch(caUrl);
+        assertEquals(1, proxy.getConnectionCount());
+    }
+
+    /**
+     * Many concurrent downloads from two distribution points on the same
+     * server never open more connections than the pool size, and a second
+     * round opens none at all.
+     */
+    @Test
+    public void testSoakKeepsConnectionCountFlat() throws Exception {
+        fetcher.setLdapPoolSize(4);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            runRound(executor, 16, 50);
+            int connections = proxy.getConnectionCount();
+            assertTrue(connections <= 4);
+            assertTrue(proxy.getOpenConnectionCount() <= 4);
+
+            runRound(executor, 16, 50);
+            assertEquals(connections, proxy.getConnectionCount());
+            assertTrue(fetcher.getLdapConnectionCount() <= 4);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runRound(ExecutorService executor, int threads,
+            final int fetches) throws Exception {
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (int i = 0; i < fetches; i++) {
+                        fetch(i % 2 == 0 ? caUrl : subCaUrl);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Object> result : results) {
+            result.get();
+        }
+    }
+
+    private X509CRL fetch(String url) throws Exception {
+        return fetcher.fetch(url, null, null).getCRL();
+    }
+
+    private void addCrl(String cn, BigInteger revoked) throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        X509Certificate ca = TestCertificates.createRoot("CN=" + cn, keys);
+        X509CRL crl = TestCertificates.createCrl(ca, keys.getPrivate(), System
+                .currentTimeMillis() + HOUR, revoked);
+        Entry entry = new Entry("cn=" + cn + ",dc=example,dc=com");
+        entry.addAttribute("objectClass", "top", "cRLDistributionPoint");
+        entry.addAttribute("certificateRevocationList;binary", crl.getEncoded());
+        server.add(entry);
+    }
+
+    private void waitForOpenConnections(int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (proxy.getOpenConnectionCount() != expected) {
+            assertTrue("open connections: " + proxy.getOpenConnectionCount(),
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Circuit breakers of CRL distribution points and the revocation policies
+ * applied when no CRL can be obtained.
+ */
+public class CRLRevocationPolicyTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private KeyPair caKeys;
+    private X509Certificate ca;
+    private TestCrlServer server;
+    private List<String> urls;
+    private CRLCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        caKeys = TestCertificates.generateKeyPair();
+        ca = TestCertificates.createRoot("CN=Test CA", caKeys);
+        server = new TestCrlServer();
+        urls = Collections.singletonList(server.getUrl("/ca.crl"));
+        cache = new CRLCache();
+        cache.setCircuitWindowSize(2);
+        cache.setCircuitMinimumCalls(2);
+        cache.setGracePeriodMillis(0);
+        cache.setRetryIntervalMillis(0);
+    }
+
+    @After
+    public void tearDown() {
+        cache.stop();
+        server.stop();
+    }
+
+    @Test
+    public void testOpenCircuitFailsFast() throws Exception {
+        server.setFailureStatus(503);
+        assertUnavailable(RevocationPolicy.HARD_FAIL);
+        assertUnavailable(RevocationPolicy.HARD_FAIL);
+        assertEquals(1, cache.getOpenCircuitCount());
+
+        // would block the request for 5 seconds if it were asked
+        server.setDelayMillis(5000);
+        long start = System.nanoTime();
+        assertUnavailable(RevocationPolicy.HARD_FAIL);
+        assertTrue(System.nanoTime() - start < 100L * 1000 * 1000);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, cache.getRejectedCount());
+    }
+
+    @Test
+    public void testTrialDownloadClosesCircuit() throws Exception {
+        cache.setCircuitOpenMillis(100);
+        server.setFailureStatus(503);
+        assertUnavailable(RevocationPolicy.HARD_FAIL);
+        assertUnavailable(RevocationPolicy.HARD_FAIL);
+        assertUnavailable(RevocationPolicy.HARD_FAIL);
+        assertEquals(2, server.getRequestCount());
+
+        server.setFailureStatus(0);
+        server.setCrl(createCrl(System.currentTimeMillis() + HOUR));
+        Thread.sleep(200);
+        cache.getRevocationIndex(urls, RevocationPolicy.HARD_FAIL, 0);
+        assertEquals(0, cache.getOpenCircuitCount());
+    }
+
+    @Test
+    public void testSoftFailUsesLastCrl() throws Exception {
+        // expired right away, so every request tries to download it again
+        server.setCrl(createCrl(System.currentTimeMillis() - 1000,
+                BigInteger.TEN));
+        cache.getRevocationIndex(urls, RevocationPolicy.HARD_FAIL, 0);
+
+        server.setFailureStatus(503);
+        assertUnavailable(RevocationPolicy.HARD_FAIL);
+        RevocationIndex index = cache.getRevocationIndex(urls,
+                RevocationPolicy.SOFT_FAIL, 0);
+        assertTrue(index.isRevoked(BigInteger.TEN));
+        // the circuit is open now, the old CRL is still used
+        index = cache.getRevocationIndex(urls, RevocationPolicy.FAIL_OPEN, 0);
+        assertTrue(index.isRevoked(BigInteger.TEN));
+        assertEquals(2, cache.getSoftFailCount());
+        assertEquals(0, cache.getFailOpenCount());
+    }
+
+    @Test
+    public void testFailOpenWithinWindow() throws Exception {
+        server.setFailureStatus(503);
+        assertUnavailable(RevocationPolicy.SOFT_FAIL);
+        assertNull(cache.getRevocationIndex(urls, RevocationPolicy.FAIL_OPEN,
+                HOUR));
+        assertEquals(1, cache.getFailOpenCount());
+
+        Thread.sleep(50);
+        try {
+            cache.getRevocationIndex(urls, RevocationPolicy.FAIL_OPEN, 10);
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // the distribution point is down for longer than the window
+        }
+    }
+
+    @Test
+    public void testFailOpenWindowCoversUnansweredDownloads() throws Exception {
+        // the distribution points never fail, they just don't answer in time
+        server.setDelayMillis(5000);
+        List<String> mirrors = Arrays.asList(server.getUrl("/a.crl"), server
+                .getUrl("/b.crl"));
+        cache.setTimeoutMillis(50);
+        assertNull(cache.getRevocationIndex(mirrors,
+                RevocationPolicy.FAIL_OPEN, HOUR));
+        assertEquals(1, cache.getTimeoutCount());
+
+        Thread.sleep(50);
+        try {
+            cache.getRevocationIndex(mirrors, RevocationPolicy.FAIL_OPEN, 80);
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // unanswered for longer than the window
+        }
+        assertEquals(1, cache.getFailOpenCount());
+    }
+
+    @Test
+    public void testVerifyWithPolicy() throws Exception {
+        X509Certificate cert = TestCertificates.createCertificate("CN=Client",
+                TestCertificates.generateKeyPair().getPublic(), ca,
+                caKeys.getPrivate(), System.currentTimeMillis() + HOUR, urls
+                        .get(0));
+        server.setFailureStatus(503);
+        try {
+            CRLVerifier.verifyCertificateCRLs(cert, cache);
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+        CRLVerifier.verifyCertificateCRLs(cert, cache,
+                RevocationPolicy.FAIL_OPEN, HOUR);
+    }
+
+    private void assertUnavailable(RevocationPolicy policy) {
+        try {
+            cache.getRevocationIndex(urls, policy, 0);
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+    }
+
+    private X509CRL createCrl(long nextUpdate, BigInteger... revoked) throws Exception {
+        return TestCertificates.createCrl(ca, caKeys.getPrivate(), nextUpdate,
+                revoked);
+    }
+
+}
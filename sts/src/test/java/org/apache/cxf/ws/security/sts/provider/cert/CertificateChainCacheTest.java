@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.security.KeyPair;
+import java.security.cert.CertPathBuilderException;
+import java.security.cert.PKIXCertPathBuilderResult;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CertificateChainCacheTest {
+
+    private KeyPair caKeys;
+    private X509Certificate ca;
+    private TrustMaterial trustMaterial;
+
+    @Before
+    public void setUp() throws Exception {
+        caKeys = TestCertificates.generateKeyPair();
+        ca = TestCertificates.createRoot("CN=Test CA", caKeys);
+        trustMaterial = new TrustMaterial(Collections.singleton(ca));
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        X509Certificate cert = createClientCertificate(TestCertificates.DAY);
+        CertificateChainCache cache = new CertificateChainCache();
+        PKIXCertPathBuilderResult result = cache.build(cert, trustMaterial);
+        assertSame(result, cache.build(cert, trustMaterial));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0.5, cache.getHitRatio(), 0.0);
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testExpiresWithCertificate() throws Exception {
+        // the ttl is far longer than the certificate is valid
+        X509Certificate cert = createClientCertificate(2000);
+        CertificateChainCache cache = new CertificateChainCache();
+        cache.build(cert, trustMaterial);
+        Thread.sleep(2500);
+        try {
+            cache.build(cert, trustMaterial);
+            fail("CertPathBuilderException should be thrown");
+        } catch (CertPathBuilderException e) {
+            // expected
+        }
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpiresWithTtl() throws Exception {
+        X509Certificate cert = createClientCertificate(TestCertificates.DAY);
+        CertificateChainCache cache = new CertificateChainCache();
+        cache.setTtlMillis(100);
+        PKIXCertPathBuilderResult result = cache.build(cert, trustMaterial);
+        Thread.sleep(200);
+        if (cache.build(cert, trustMaterial) == result) {
+            fail("Chain should be built again");
+        }
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testNegativeCache() throws Exception {
+        KeyPair otherKeys = TestCertificates.generateKeyPair();
+        X509Certificate otherCa = TestCertificates.createRoot("CN=Other CA", otherKeys);
+        X509Certificate cert = TestCertificates.createCertificate("CN=Stranger",
+                TestCertificates.generateKeyPair().getPublic(), otherCa,
+                otherKeys.getPrivate(), System.currentTimeMillis()
+                        + TestCertificates.DAY);
+        CertificateChainCache cache = new CertificateChainCache();
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.build(cert, trustMaterial);
+                fail("CertPathBuilderException should be thrown");
+            } catch (CertPathBuilderException e) {
+                // expected
+            }
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getNegativeHitCount());
+    }
+
+    @Test
+    public void testTrustMaterialChange() throws Exception {
+        X509Certificate cert = createClientCertificate(TestCertificates.DAY);
+        CertificateChainCache cache = new CertificateChainCache();
+        cache.build(cert, trustMaterial);
+        TrustMaterial reloaded = new TrustMaterial(Collections.singleton(ca));
+        cache.build(cert, reloaded);
+        cache.build(cert, reloaded);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        CertificateChainCache cache = new CertificateChainCache();
+        cache.setMaxSize(2);
+        X509Certificate first = createClientCertificate(TestCertificates.DAY);
+        X509Certificate second = createClientCertificate(TestCertificates.DAY);
+        PKIXCertPathBuilderResult result = cache.build(first, trustMaterial);
+        cache.build(second, trustMaterial);
+        assertSame(result, cache.build(first, trustMaterial));
+        // the least recently used one makes room
+        cache.build(createClientCertificate(TestCertificates.DAY), trustMaterial);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(result, cache.build(first, trustMaterial));
+        cache.build(second, trustMaterial);
+        assertEquals(4, cache.getMissCount());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testFailuresDoNotEvictSuccesses() throws Exception {
+        KeyPair otherKeys = TestCertificates.generateKeyPair();
+        X509Certificate otherCa = TestCertificates.createRoot("CN=Other CA", otherKeys);
+        CertificateChainCache cache = new CertificateChainCache();
+        cache.setMaxSize(1);
+        cache.setMaxNegativeSize(1);
+        X509Certificate cert = createClientCertificate(TestCertificates.DAY);
+        PKIXCertPathBuilderResult result = cache.build(cert, trustMaterial);
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.build(TestCertificates.createCertificate("CN=Stranger",
+                        TestCertificates.generateKeyPair().getPublic(), otherCa,
+                        otherKeys.getPrivate(), System.currentTimeMillis()
+                                + TestCertificates.DAY), trustMaterial);
+                fail("CertPathBuilderException should be thrown");
+            } catch (CertPathBuilderException e) {
+                // expected
+            }
+        }
+        assertEquals(1, cache.getNegativeSize());
+        assertSame(result, cache.build(cert, trustMaterial));
+    }
+
+    @Test
+    public void testReloadDropsPreviousEntries() throws Exception {
+        CertificateChainCache cache = new CertificateChainCache();
+        cache.build(createClientCertificate(TestCertificates.DAY), trustMaterial);
+        cache.build(createClientCertificate(TestCertificates.DAY), trustMaterial);
+        assertEquals(2, cache.getSize());
+        TrustMaterial reloaded = new TrustMaterial(Collections.singleton(ca));
+        cache.build(createClientCertificate(TestCertificates.DAY), reloaded);
+        assertEquals(1, cache.getSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    private X509Certificate createClientCertificate(long validMillis) throws Exception {
+        return TestCertificates.createCertificate("CN=Client",
+                TestCertificates.generateKeyPair().getPublic(), ca,
+                caKeys.getPrivate(), System.currentTimeMillis() + validMillis);
+    }
+
+}
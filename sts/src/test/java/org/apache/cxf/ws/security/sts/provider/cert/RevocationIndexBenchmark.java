@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Memory footprint, build time and lookup rate of the revocation index
+ * compared to the parsed {@link X509CRL}, for a synthetic CRL with a
+ * million random 16 byte serial numbers (override with
+ * <code>-Dentries=...</code>). Run it with a heap of at least 2 GB. Not part
+ * of the regular test run, start it with
+ * <code>mvn test -Dtest=RevocationIndexBenchmark</code>.
+ */
+public class RevocationIndexBenchmark {
+
+    private static final int ENTRIES = Integer.getInteger("entries", 1000000);
+    private static final int LOOKUPS = 1000000;
+
+    @Test
+    public void benchmarkLookups() throws Exception {
+        KeyPair caKeys = TestCertificates.generateKeyPair();
+        X509Certificate ca = TestCertificates.createRoot("CN=Benchmark CA", caKeys);
+        Random random = new Random(42);
+        BigInteger[] revoked = new BigInteger[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            revoked[i] = new BigInteger(127, random);
+        }
+
+        long start = System.nanoTime();
+        byte[] encoded = TestCertificates.createCrl(ca, caKeys.getPrivate(),
+                System.currentTimeMillis() + TestCertificates.DAY, revoked)
+                .getEncoded();
+        System.out.println("Generated CRL with " + ENTRIES + " entries, "
+                + encoded.length / 1024 + " KB, in " + millisSince(start) + " ms");
+
+        long before = usedHeap();
+        start = System.nanoTime();
+        X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509")
+                .generateCRL(new ByteArrayInputStream(encoded));
+        // the entries are parsed lazily by some providers
+        crl.getRevokedCertificates();
+        long parseMillis = millisSince(start);
+        long crlHeap = usedHeap() - before;
+        System.out.println("X509CRL: parsed in " + parseMillis + " ms, "
+                + crlHeap / 1024 + " KB heap, "
+                + lookupRate(crl, null, revoked, random) + " lookups/s");
+
+        for (RevocationIndex.Storage storage : RevocationIndex.Storage.values()) {
+            before = usedHeap();
+            start = System.nanoTime();
+            RevocationIndex index = RevocationIndex.create(crl, storage, null);
+            long buildMillis = millisSince(start);
+            long indexHeap = usedHeap() - before;
+            System.out.println(storage + " index: built in " + buildMillis
+                    + " ms, " + index.getByteCount() / 1024 + " KB of serials, "
+                    + Math.max(0, indexHeap) / 1024 + " KB heap, "
+                    + lookupRate(null, index, revoked, random) + " lookups/s");
+        }
+    }
+
+    private static long lookupRate(X509CRL crl, RevocationIndex index,
+            BigInteger[] revoked, Random random) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            // half of the lookups hit a revoked serial number
+            BigInteger serial = (i & 1) == 0 ? revoked[random.nextInt(revoked.length)]
+                    : new BigInteger(127, random);
+            boolean isRevoked = crl != null ? crl.getRevokedCertificate(serial) != null
+                    : index.isRevoked(serial);
+            if (isRevoked) {
+                found++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(found >= LOOKUPS / 2);
+        return LOOKUPS * 1000000000L / elapsed;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+}
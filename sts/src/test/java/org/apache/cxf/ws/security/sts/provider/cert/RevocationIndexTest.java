@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RevocationIndexTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    @Test
+    public void testLookup() throws Exception {
+        KeyPair caKeys = TestCertificates.generateKeyPair();
+        X509Certificate ca = TestCertificates.createRoot("CN=Test CA", caKeys);
+        Random random = new Random(42);
+        Set<BigInteger> revoked = new HashSet<BigInteger>();
+        revoked.add(BigInteger.ONE);
+        revoked.add(BigInteger.valueOf(255));
+        revoked.add(BigInteger.valueOf(256));
+        while (revoked.size() < 1000) {
+            // serial numbers of varying length, up to 20 bytes
+            revoked.add(new BigInteger(1 + random.nextInt(159), random));
+        }
+        long nextUpdate = System.currentTimeMillis() + HOUR;
+        X509CRL crl = TestCertificates.createCrl(ca, caKeys.getPrivate(),
+                nextUpdate, revoked.toArray(new BigInteger[revoked.size()]));
+
+        for (RevocationIndex.Storage storage : RevocationIndex.Storage.values()) {
+            RevocationIndex index = RevocationIndex.create(crl, storage, null);
+            assertEquals(storage, index.getStorage());
+            assertEquals(revoked.size(), index.getSize());
+            assertEquals(crl.getNextUpdate(), index.getNextUpdate());
+            for (BigInteger serial : revoked) {
+                assertTrue(serial.toString(), index.isRevoked(serial));
+            }
+            for (int i = 0; i < 1000; i++) {
+                BigInteger serial = new BigInteger(1 + random.nextInt(170), random);
+                assertEquals(serial.toString(), revoked.contains(serial), index
+                        .isRevoked(serial));
+            }
+            for (int i = 0; i < 1024; i++) {
+                BigInteger serial = BigInteger.valueOf(i);
+                assertEquals(serial.toString(), revoked.contains(serial), index
+                        .isRevoked(serial));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyCrl() throws Exception {
+        KeyPair caKeys = TestCertificates.generateKeyPair();
+        X509Certificate ca = TestCertificates.createRoot("CN=Test CA", caKeys);
+        X509CRL crl = TestCertificates.createCrl(ca, caKeys.getPrivate(), 0);
+        RevocationIndex index = RevocationIndex.create(crl,
+                RevocationIndex.Storage.HEAP, null);
+        assertEquals(0, index.getSize());
+        assertFalse(index.isRevoked(BigInteger.ONE));
+        assertEquals(null, index.getNextUpdate());
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.x509.X509V2CRLGenerator;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+
+/**
+ * Creates throw-away CAs, certificates and CRLs for tests. They are handed
+ * out as the JDK's implementations; BouncyCastle's fail in the PKIX classes
+ * unless it is registered as a security provider.
+ */
+final class TestCertificates {
+
+    static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256WithRSA";
+    private static final AtomicLong SERIALS = new AtomicLong(1);
+
+    private TestCertificates() {
+    }
+
+    static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+
+    static X509Certificate createRoot(String dn, KeyPair keyPair) throws Exception {
+        X509V3CertificateGenerator generator = newGenerator(dn,
+                new X500Principal(dn), keyPair.getPublic(),
+                System.currentTimeMillis() + 3650 * DAY);
+        generator.addExtension(X509Extensions.BasicConstraints, true,
+                new BasicConstraints(true));
+        generator.addExtension(X509Extensions.KeyUsage, true, new KeyUsage(
+                KeyUsage.keyCertSign | KeyUsage.cRLSign));
+        return toJdk(generator.generate(keyPair.getPrivate()));
+    }
+
+    static X509Certificate createCertificate(String dn, PublicKey publicKey,
+            X509Certificate issuer, PrivateKey issuerKey, long notAfter) throws Exception {
+        return createCertificate(dn, publicKey, issuer, issuerKey, notAfter, null);
+    }
+
+    /**
+     * @param crlUrl distribution point of the CRL, or <code>null</code>
+     */
+    static X509Certificate createCertificate(String dn, PublicKey publicKey,
+            X509Certificate issuer, PrivateKey issuerKey, long notAfter,
+            String crlUrl) throws Exception {
+        X509V3CertificateGenerator generator = newGenerator(dn, issuer
+                .getSubjectX500Principal(), publicKey, notAfter);
+        generator.addExtension(X509Extensions.BasicConstraints, true,
+                new BasicConstraints(false));
+        if (crlUrl != null) {
+            GeneralNames names = new GeneralNames(new GeneralName(
+                    GeneralName.uniformResourceIdentifier, crlUrl));
+            generator.addExtension(X509Extensions.CRLDistributionPoints, false,
+                    new CRLDistPoint(new DistributionPoint[] {
+                        new DistributionPoint(new DistributionPointName(
+                                DistributionPointName.FULL_NAME, names), null, null)
+                    }));
+        }
+        return toJdk(generator.generate(issuerKey));
+    }
+
+    /**
+     * Creates a CRL issued now.
+     *
+     * @param nextUpdate time of the next update, or 0 for none
+     */
+    static X509CRL createCrl(X509Certificate issuer, PrivateKey issuerKey,
+            long nextUpdate, BigInteger... revoked) throws Exception {
+        X509V2CRLGenerator generator = new X509V2CRLGenerator();
+        generator.setIssuerDN(issuer.getSubjectX500Principal());
+        Date now = new Date();
+        generator.setThisUpdate(now);
+        if (nextUpdate != 0) {
+            generator.setNextUpdate(new Date(nextUpdate));
+        }
+        generator.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+        for (BigInteger serial : revoked) {
+            generator.addCRLEntry(serial, now, CRLReason.keyCompromise);
+        }
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
+                new ByteArrayInputStream(generator.generate(issuerKey)
+                        .getEncoded()));
+    }
+
+    private static X509Certificate toJdk(X509Certificate cert) throws Exception {
+        return (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(cert.getEncoded()));
+    }
+
+    private static X509V3CertificateGenerator newGenerator(String dn,
+            X500Principal issuer, PublicKey publicKey, long notAfter) {
+        X509V3CertificateGenerator generator = new X509V3CertificateGenerator();
+        generator.setSerialNumber(BigInteger.valueOf(SERIALS.getAndIncrement()));
+        generator.setIssuerDN(issuer);
+        generator.setSubjectDN(new X500Principal(dn));
+        generator.setNotBefore(new Date(System.currentTimeMillis() - DAY));
+        generator.setNotAfter(new Date(notAfter));
+        generator.setPublicKey(publicKey);
+        generator.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+        return generator;
+    }
+
+}
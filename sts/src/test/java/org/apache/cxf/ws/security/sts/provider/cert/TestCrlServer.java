@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.cert.X509CRL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Publishes a CRL over HTTP with an ETag, answering conditional requests
+ * with 304.
+ */
+final class TestCrlServer implements HttpHandler {
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final AtomicInteger versions = new AtomicInteger();
+    private volatile byte[] crl;
+    private volatile String etag;
+    private volatile int failureStatus;
+    private volatile long delayMillis;
+
+    TestCrlServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this);
+        server.start();
+    }
+
+    String getUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    void setCrl(X509CRL newCrl) throws Exception {
+        crl = newCrl.getEncoded();
+        etag = "\"crl-" + versions.incrementAndGet() + "\"";
+    }
+
+    /**
+     * Answers every request with the status, 0 to serve the CRL again.
+     */
+    void setFailureStatus(int failureStatus) {
+        this.failureStatus = failureStatus;
+    }
+
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Number of requests answered with the full CRL.
+     */
+    int getDownloadCount() {
+        return downloads.get();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = crl;
+        String tag = etag;
+        if (failureStatus != 0 || body == null) {
+            exchange.sendResponseHeaders(failureStatus != 0 ? failureStatus : 404, -1);
+        } else if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            downloads.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", tag);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(body);
+            os.close();
+        }
+        exchange.close();
+    }
+
+}
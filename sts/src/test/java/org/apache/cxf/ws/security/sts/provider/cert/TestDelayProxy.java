@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP proxy that holds every connection for a while before forwarding it,
+ * to simulate a slow server of any protocol. It also counts the connections
+ * and can drop them, like a firewall would.
+ */
+final class TestDelayProxy implements Runnable {
+
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+    private final Set<Socket> sockets = Collections
+            .newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile long delayMillis;
+
+    TestDelayProxy(int targetPort) throws IOException {
+        this.targetPort = targetPort;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        start(this, "TestDelayProxy");
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Number of connections accepted so far.
+     */
+    int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Number of connections currently open.
+     */
+    int getOpenConnectionCount() {
+        return sockets.size();
+    }
+
+    void closeConnections() {
+        for (Socket socket : sockets) {
+            close(socket);
+        }
+    }
+
+    void stop() throws IOException {
+        serverSocket.close();
+        closeConnections();
+    }
+
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                connections.incrementAndGet();
+                sockets.add(client);
+                start(new Runnable() {
+                    public void run() {
+                        forward(client);
+                    }
+                }, "TestDelayProxy connection");
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+    private void forward(Socket client) {
+        try {
+            Thread.sleep(delayMillis);
+            Socket target = new Socket("127.0.0.1", targetPort);
+            start(pipe(target, client), "TestDelayProxy response");
+            pipe(client, target).run();
+        } catch (IOException e) {
+            close(client);
+            sockets.remove(client);
+        } catch (InterruptedException e) {
+            close(client);
+            sockets.remove(client);
+        }
+    }
+
+    private Runnable pipe(final Socket from, final Socket to) throws IOException {
+        final InputStream in = from.getInputStream();
+        final OutputStream out = to.getOutputStream();
+        return new Runnable() {
+            public void run() {
+                byte[] buffer = new byte[4096];
+                try {
+                    for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                        out.write(buffer, 0, n);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // connection closed by the other side
+                } finally {
+                    close(from);
+                    close(to);
+                    sockets.remove(from);
+                    sockets.remove(to);
+                }
+            }
+        };
+    }
+
+    private static void start(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.cert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.KeyStore;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.X509CertSelector;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TrustMaterialCacheTest {
+
+    private static final String STORE_PATH = "/stsstore.jks";
+    private static final String STORE_PWD = "stsspass";
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("truststore", ".jks");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testClassPathStore() throws Exception {
+        TrustMaterialCache cache = new TrustMaterialCache(config(STORE_PATH));
+        TrustMaterial trustMaterial = cache.get();
+        assertEquals(2, trustMaterial.getRootCerts().size());
+        assertEquals(0, trustMaterial.getIntermediateCerts().size());
+        assertSame(trustMaterial, cache.get());
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    public void testBuilderParametersAreCopies() throws Exception {
+        TrustMaterial trustMaterial = new TrustMaterialCache(config(STORE_PATH)).get();
+        X509CertSelector selector = new X509CertSelector();
+        selector.setSerialNumber(BigInteger.ONE);
+        PKIXBuilderParameters first = trustMaterial.newBuilderParameters(selector);
+        PKIXBuilderParameters second = trustMaterial.newBuilderParameters(
+                new X509CertSelector());
+        assertNotSame(first, second);
+        assertEquals(BigInteger.ONE, ((X509CertSelector) first
+                .getTargetCertConstraints()).getSerialNumber());
+        assertNull(((X509CertSelector) second.getTargetCertConstraints())
+                .getSerialNumber());
+        assertFalse(first.isRevocationEnabled());
+        assertEquals(2, first.getTrustAnchors().size());
+        assertEquals(1, first.getCertStores().size());
+    }
+
+    @Test
+    public void testUnknownAlias() {
+        CertificateVerifierConfig config = config(STORE_PATH);
+        config.setTrustCertAliases(Arrays.asList("myclientkey", "nosuchkey"));
+        TrustMaterialCache cache = new TrustMaterialCache(config);
+        try {
+            cache.get();
+            fail("CertificateVerificationException should be thrown");
+        } catch (CertificateVerificationException e) {
+            // expected
+        }
+        assertEquals(1, cache.getFailedLoadCount());
+    }
+
+    @Test
+    public void testReloadWhenModified() throws Exception {
+        KeyStore ks = loadClassPathStore();
+        write(ks);
+        TrustMaterialCache cache = new TrustMaterialCache(config(file.getPath()));
+        cache.start();
+        TrustMaterial before = cache.get();
+        assertEquals(2, cache.getRootCertCount());
+
+        cache.reloadIfModified();
+        assertEquals(1, cache.getLoadCount());
+
+        // both aliases now hold the same certificate
+        ks.setCertificateEntry("myservicekey", ks.getCertificate("myclientkey"));
+        write(ks);
+        file.setLastModified(cache.getLastModified() + 2000);
+        cache.reloadIfModified();
+        assertEquals(2, cache.getLoadCount());
+        assertEquals(1, cache.getRootCertCount());
+        // verifications in progress keep the old trust material
+        assertEquals(2, before.getRootCerts().size());
+        cache.stop();
+    }
+
+    @Test
+    public void testFailedReloadKeepsTrustMaterial() throws Exception {
+        write(loadClassPathStore());
+        TrustMaterialCache cache = new TrustMaterialCache(config(file.getPath()));
+        TrustMaterial before = cache.get();
+
+        OutputStream os = new FileOutputStream(file);
+        os.write(new byte[] {1, 2, 3});
+        os.close();
+        cache.reload();
+        assertSame(before, cache.get());
+        assertEquals(1, cache.getFailedLoadCount());
+    }
+
+    private static CertificateVerifierConfig config(String storePath) {
+        CertificateVerifierConfig config = new CertificateVerifierConfig();
+        config.setStorePath(storePath);
+        config.setStorePwd(STORE_PWD);
+        config.setTrustCertAliases(Arrays.asList("myclientkey", "myservicekey"));
+        return config;
+    }
+
+    private static KeyStore loadClassPathStore() throws Exception {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        InputStream is = TrustMaterialCacheTest.class.getResourceAsStream(STORE_PATH);
+        try {
+            ks.load(is, STORE_PWD.toCharArray());
+        } finally {
+            is.close();
+        }
+        return ks;
+    }
+
+    private void write(KeyStore ks) throws Exception {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            ks.store(os, STORE_PWD.toCharArray());
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.ws.security.sts.provider.ldap;
+
+import javax.naming.AuthenticationException;
+import javax.naming.ldap.LdapContext;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LdapContextPoolTest {
+
+    private static final String JOE = "uid=joe,ou=people,dc=example,dc=com";
+
+    private InMemoryDirectoryServer server;
+    private LdapContextPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(
+                "dc=example,dc=com");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig(
+                "default", 0));
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: dc=example,dc=com", "objectClass: top",
+                "objectClass: domain", "dc: example");
+        server.add("dn: ou=people,dc=example,dc=com", "objectClass: top",
+                "objectClass: organizationalUnit", "ou: people");
+        server.add("dn: " + JOE, "objectClass: top", "objectClass: person",
+                "objectClass: organizationalPerson",
+                "objectClass: inetOrgPerson", "uid: joe", "cn: joe", "sn: joe",
+                "userPassword: joespassword");
+        server.startListening();
+
+        pool = new LdapContextPool("ldap://localhost:" + server.getListenPort(), 2);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void testWrongPasswordKeepsConnection() throws Exception {
+        pool.release(pool.borrow(JOE, "joespassword"));
+        assertEquals(1, pool.getCreatedCount());
+
+        for (int i = 0; i < 10; i++) {
+            try {
+                pool.borrow(JOE, "alicespassword");
+                fail("AuthenticationException should be thrown");
+            } catch (AuthenticationException e) {
+                // expected
+            }
+        }
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getBorrowedCount());
+
+        LdapContext context = pool.borrow(JOE, "joespassword");
+        pool.release(context);
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+}
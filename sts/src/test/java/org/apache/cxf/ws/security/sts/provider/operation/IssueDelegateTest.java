@@ -49,6 +49,7 @@ import org.w3._2000._09.xmldsig.X509DataType;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.verify;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
@@ -156,7 +157,8 @@ public class IssueDelegateTest {
             id.issue(requestMock);
             fail("STSException should be thrown");
         } catch (STSException e) {
-        	// expected
+            // same reason for unknown user and wrong password
+            assertEquals("Authentication failed", e.getMessage());
         } finally {
             verify(requestMock);
         }
@@ -200,7 +202,8 @@ public class IssueDelegateTest {
 
             fail("STSException should be thrown");
         } catch (STSException e) {
-        	// expected 
+            // same reason for unknown user and wrong password
+            assertEquals("Authentication failed", e.getMessage());
         } finally {
             verify(requestMock);
         }
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CredentialCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedMakesRoom() {
+        CredentialCache cache = new CredentialCache();
+        cache.setMaxSize(2);
+        cache.add("joe", "joespassword", null);
+        cache.add("alice", "alicespassword", null);
+        assertTrue(cache.contains("joe", "joespassword", null));
+        cache.add("bob", "bobspassword", null);
+        assertEquals(2, cache.getSize());
+        assertTrue(cache.contains("joe", "joespassword", null));
+        assertTrue(cache.contains("bob", "bobspassword", null));
+        assertFalse(cache.contains("alice", "alicespassword", null));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        CredentialCache cache = new CredentialCache();
+        cache.setTtlMillis(50);
+        cache.add("joe", "joespassword", "stored");
+        assertTrue(cache.contains("joe", "joespassword", "stored"));
+        assertFalse(cache.contains("joe", "joespassword", "changed"));
+        Thread.sleep(100);
+        assertFalse(cache.contains("joe", "joespassword", "stored"));
+        assertEquals(0, cache.getSize());
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcUserStoreTest {
+
+    private static final int POOL_SIZE = 8;
+
+    private BasicDataSource dataSource;
+    private JdbcUserStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:users;DB_CLOSE_DELAY=-1");
+        dataSource.setMaxActive(POOL_SIZE);
+        dataSource.setMaxIdle(POOL_SIZE);
+        dataSource.setPoolPreparedStatements(true);
+
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE users (username VARCHAR(64) PRIMARY KEY, "
+                    + "password VARCHAR(128))");
+            statement.execute("CREATE TABLE user_attributes (username VARCHAR(64), "
+                    + "name VARCHAR(64), value VARCHAR(256))");
+            statement.execute("INSERT INTO users VALUES ('joe', 'joespassword')");
+            statement.execute("INSERT INTO users VALUES ('alice', '"
+                    + PasswordHash.create("alicespassword", 1000) + "')");
+            for (int i = 0; i < 10; i++) {
+                statement.execute("INSERT INTO user_attributes VALUES ('user" + i
+                        + "', 'role', 'role" + i + "')");
+            }
+            statement.execute("INSERT INTO user_attributes VALUES ('joe', 'role', 'admin')");
+            statement.execute("INSERT INTO user_attributes VALUES ('joe', 'role', 'user')");
+            statement.execute("INSERT INTO user_attributes VALUES ('joe', 'mail', "
+                    + "'joe@example.com')");
+            statement.close();
+        } finally {
+            connection.close();
+        }
+
+        store = new JdbcUserStore();
+        store.setDataSource(dataSource);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().execute("DROP ALL OBJECTS");
+        } finally {
+            connection.close();
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void testAuthenticate() {
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("joe",
+                "joespassword"));
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("alice",
+                "alicespassword"));
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "alice", "joespassword"));
+        assertEquals(AuthenticationResult.UNKNOWN_USER, store.authenticate(
+                "nobody", "joespassword"));
+        assertEquals(4, store.getPasswordQueryMetrics().getQueryCount());
+        assertEquals(0, store.getPasswordQueryMetrics().getErrorCount());
+    }
+
+    @Test
+    public void testAttributes() {
+        Map<String, List<String>> attributes = store.getAttributes("joe");
+        assertEquals(2, attributes.size());
+        assertEquals(2, attributes.get("role").size());
+        assertTrue(attributes.get("role").contains("admin"));
+        assertEquals(Arrays.asList("joe@example.com"), attributes.get("mail"));
+        assertTrue(store.getAttributes("nobody").isEmpty());
+    }
+
+    @Test
+    public void testAttributesAreBatched() {
+        store.setBatchSize(4);
+        List<String> usernames = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            usernames.add("user" + i);
+        }
+        usernames.add("nobody");
+        Map<String, Map<String, List<String>>> attributes = store
+                .getAttributes(usernames);
+        assertEquals(10, attributes.size());
+        assertEquals(Arrays.asList("role7"), attributes.get("user7").get("role"));
+        assertEquals(1, store.getAttributeQueryMetrics().getQueryCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsShareThePool() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(200);
+        try {
+            List<Callable<AuthenticationResult>> tasks =
+                new ArrayList<Callable<AuthenticationResult>>();
+            for (int i = 0; i < 2000; i++) {
+                tasks.add(new Callable<AuthenticationResult>() {
+                    public AuthenticationResult call() {
+                        return store.authenticate("joe", "joespassword");
+                    }
+                });
+            }
+            for (Future<AuthenticationResult> result : executor.invokeAll(tasks)) {
+                assertEquals(AuthenticationResult.SUCCESS, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, dataSource.getNumActive());
+        assertTrue(dataSource.getNumIdle() <= POOL_SIZE);
+        assertEquals(2000, store.getPasswordQueryMetrics().getQueryCount());
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LdapUserStoreTest {
+
+    private InMemoryDirectoryServer server;
+    private LdapUserStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(
+                "dc=example,dc=com");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig(
+                "default", 0));
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: dc=example,dc=com", "objectClass: top",
+                "objectClass: domain", "dc: example");
+        server.add("dn: ou=people,dc=example,dc=com", "objectClass: top",
+                "objectClass: organizationalUnit", "ou: people");
+        addUser("joe", "joespassword");
+        addUser("alice", "alicespassword");
+        server.startListening();
+
+        store = new LdapUserStore();
+        store.setUrl("ldap://localhost:" + server.getListenPort());
+        store.setUserDnPattern("uid={0},ou=people,dc=example,dc=com");
+        store.setPoolSize(2);
+        store.start();
+    }
+
+    @After
+    public void tearDown() {
+        store.stop();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void testSuccessfulBindIsCached() {
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("joe",
+                "joespassword"));
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("joe",
+                "joespassword"));
+        assertEquals(1, store.getBindCount());
+        assertEquals(1, store.getCacheHitCount());
+        assertEquals(1, store.getCacheSize());
+    }
+
+    @Test
+    public void testFailedBindIsNotCached() {
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "joe", "alicespassword"));
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "joe", "alicespassword"));
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "nobody", "joespassword"));
+        assertEquals(3, store.getBindCount());
+        assertEquals(3, store.getFailedBindCount());
+        assertEquals(0, store.getCacheSize());
+    }
+
+    @Test
+    public void testEmptyPasswordIsRejectedWithoutBind() {
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "joe", ""));
+        assertEquals(0, store.getBindCount());
+    }
+
+    @Test
+    public void testConnectionIsReusedAcrossUsers() {
+        store.setCacheTtlMillis(0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(AuthenticationResult.SUCCESS, store.authenticate("joe",
+                    "joespassword"));
+            assertEquals(AuthenticationResult.SUCCESS, store.authenticate(
+                    "alice", "alicespassword"));
+        }
+        assertEquals(40, store.getBindCount());
+        assertEquals(1, store.getOpenConnections());
+        assertEquals(1, store.getIdleConnections());
+        assertEquals(0, store.getBorrowedConnections());
+    }
+
+    @Test
+    public void testUsernameIsEscaped() {
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "joe,ou=people", "joespassword"));
+        assertEquals("joe\\,ou\\=people", LdapUserStore.escapeDn("joe,ou=people"));
+        assertEquals("\\#joe\\ ", LdapUserStore.escapeDn("#joe "));
+    }
+
+    private void addUser(String uid, String password) throws Exception {
+        server.add("dn: uid=" + uid + ",ou=people,dc=example,dc=com",
+                "objectClass: top", "objectClass: person",
+                "objectClass: organizationalPerson", "objectClass: inetOrgPerson",
+                "uid: " + uid, "cn: " + uid, "sn: " + uid, "userPassword: "
+                        + password);
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoginThrottleTest {
+
+    @Test
+    public void testUserIsBlockedAfterFailures() {
+        LoginThrottle throttle = new LoginThrottle();
+        throttle.setMaxFailuresPerUser(3);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(throttle.isBlocked("joe", "10.0.0.1"));
+            throttle.recordFailure("joe", "10.0.0.1");
+        }
+        assertTrue(throttle.isBlocked("joe", "10.0.0.2"));
+        assertFalse(throttle.isBlocked("alice", "10.0.0.1"));
+        assertEquals(1, throttle.getRejectedCount());
+        assertEquals(3, throttle.getFailureCount());
+    }
+
+    @Test
+    public void testSuccessClearsUserButNotAddress() {
+        LoginThrottle throttle = new LoginThrottle();
+        throttle.setMaxFailuresPerUser(2);
+        throttle.setMaxFailuresPerAddress(3);
+        throttle.recordFailure("joe", "10.0.0.1");
+        throttle.recordFailure("alice", "10.0.0.1");
+        throttle.recordSuccess("joe");
+        assertFalse(throttle.isBlocked("joe", null));
+
+        throttle.recordFailure("alex", "10.0.0.1");
+        assertTrue(throttle.isBlocked("joe", "10.0.0.1"));
+        assertFalse(throttle.isBlocked("joe", "10.0.0.2"));
+    }
+
+    @Test
+    public void testFailuresExpire() throws Exception {
+        LoginThrottle throttle = new LoginThrottle();
+        throttle.setMaxFailuresPerUser(2);
+        throttle.setWindowMillis(50);
+        throttle.recordFailure("joe", null);
+        throttle.recordFailure("joe", null);
+        assertTrue(throttle.isBlocked("joe", null));
+        // after two windows nothing of the failures is left
+        Thread.sleep(120);
+        assertFalse(throttle.isBlocked("joe", null));
+    }
+
+    @Test
+    public void testMemoryIsBoundedUnderSpraying() {
+        LoginThrottle throttle = new LoginThrottle();
+        throttle.setStripes(4);
+        throttle.setMaxTrackedKeys(64);
+        throttle.setMaxFailuresPerAddress(100);
+        for (int i = 0; i < 10000; i++) {
+            throttle.recordFailure("user" + i, "10.0.0.1");
+        }
+        assertTrue(throttle.getTrackedUsers() <= 64);
+        assertEquals(1, throttle.getTrackedAddresses());
+        assertTrue(throttle.isBlocked("user10001", "10.0.0.1"));
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PasswordHashTest {
+
+    @Test
+    public void testCreateAndVerify() {
+        String hash = PasswordHash.create("joespassword", 1000);
+        assertTrue(hash.startsWith("{PBKDF2}1000$"));
+        assertTrue(PasswordHash.verify("joespassword", hash));
+        assertFalse(PasswordHash.verify("alicespassword", hash));
+        // salted, the same password gives another hash
+        assertFalse(hash.equals(PasswordHash.create("joespassword", 1000)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedHash() {
+        PasswordHash.verify("joespassword", "{PBKDF2}1000$abc");
+    }
+
+    @Test
+    public void testMigration() throws Exception {
+        String hashed = PasswordHash.create("alicespassword", 1000);
+        String users = "<?xml version='1.0' encoding='UTF-8'?>\n<users>\n"
+                + "  <!-- staff -->\n"
+                + "  <user username='joe' password='joespassword' roles='a'/>\n"
+                + "  <user username='alice' password='" + hashed + "'/>\n"
+                + "</users>";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int count = PasswordFileMigration.migrate(new ByteArrayInputStream(users
+                .getBytes("UTF-8")), out, 1000);
+        assertEquals(1, count);
+
+        String migrated = out.toString("UTF-8");
+        assertTrue(migrated.contains("<!-- staff -->"));
+        assertTrue(migrated.contains("roles=\"a\""));
+        assertTrue(migrated.contains(hashed));
+        assertFalse(migrated.contains("joespassword"));
+
+        // a second run leaves the file as it is
+        assertEquals(0, PasswordFileMigration.migrate(new ByteArrayInputStream(
+                migrated.getBytes("UTF-8")), new ByteArrayOutputStream(), 1000));
+    }
+
+}
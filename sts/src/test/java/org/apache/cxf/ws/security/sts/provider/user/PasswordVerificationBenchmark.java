@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Issue throughput of the password check with PBKDF2 hashed passwords, with
+ * and without the verification cache, for a small set of users logging in
+ * repeatedly from several threads. Not part of the regular test run, start
+ * it with <code>mvn test -Dtest=PasswordVerificationBenchmark</code>.
+ */
+public class PasswordVerificationBenchmark {
+
+    private static final int USERS = 50;
+    private static final int THREADS = 8;
+    private static final int LOGINS_PER_THREAD = 200;
+
+    @Test
+    public void benchmarkVerification() throws Exception {
+        File file = File.createTempFile("users", ".xml");
+        try {
+            writeUsers(file);
+
+            XmlUserStore uncached = new XmlUserStore();
+            uncached.setLocation(file.getPath());
+            uncached.setCacheTtlMillis(0);
+            XmlUserStore cached = new XmlUserStore();
+            cached.setLocation(file.getPath());
+
+            run(uncached, LOGINS_PER_THREAD / 4);
+            System.out.println("Without cache: "
+                    + run(uncached, LOGINS_PER_THREAD) + " logins/s");
+
+            run(cached, LOGINS_PER_THREAD / 4);
+            System.out.println("With cache: " + run(cached, LOGINS_PER_THREAD)
+                    + " logins/s, " + cached.getCacheHitCount() + " hits");
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static long run(final XmlUserStore store, final int logins) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t;
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        for (int i = 0; i < logins; i++) {
+                            int user = (offset + i) % USERS;
+                            assertEquals(AuthenticationResult.SUCCESS, store
+                                    .authenticate("user" + user, "password"
+                                            + user));
+                        }
+                        return null;
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return THREADS * (long) logins * 1000000000L / elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void writeUsers(File file) throws Exception {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("<users>\n");
+            for (int i = 0; i < USERS; i++) {
+                writer.write("<user username=\"user" + i + "\" password=\""
+                        + PasswordHash.create("password" + i,
+                                PasswordHash.DEFAULT_ITERATIONS) + "\"/>\n");
+            }
+            writer.write("</users>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+}
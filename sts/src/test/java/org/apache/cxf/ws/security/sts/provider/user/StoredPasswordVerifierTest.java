@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StoredPasswordVerifierTest {
+
+    @Test
+    public void testUnknownUserOfPlaintextStore() {
+        StoredPasswordVerifier verifier = new StoredPasswordVerifier();
+        assertEquals(AuthenticationResult.SUCCESS, verifier.verify("bob",
+                "secret", "secret"));
+        assertFalse(verifier.isHashedPasswords());
+
+        // a plain comparison, not a hash computation per sprayed username
+        long start = System.nanoTime();
+        PasswordHash.verify("secret", PasswordHash.create("secret",
+                PasswordHash.DEFAULT_ITERATIONS));
+        long hashNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(AuthenticationResult.UNKNOWN_USER, verifier
+                    .verifyUnknownUser("secret"));
+        }
+        assertTrue(System.nanoTime() - start < hashNanos);
+    }
+
+    @Test
+    public void testUnknownUserOfHashedStore() {
+        StoredPasswordVerifier verifier = new StoredPasswordVerifier();
+        String hash = PasswordHash.create("secret", 1000);
+        assertEquals(AuthenticationResult.SUCCESS, verifier.verify("bob",
+                "secret", hash));
+        assertTrue(verifier.isHashedPasswords());
+        assertEquals(AuthenticationResult.UNKNOWN_USER, verifier
+                .verifyUnknownUser("secret"));
+        assertEquals(AuthenticationResult.UNKNOWN_USER, verifier
+                .verifyUnknownUser(null));
+    }
+
+    @Test
+    public void testStoreKindBeforeAnyUser() {
+        StoredPasswordVerifier verifier = new StoredPasswordVerifier();
+        assertFalse(verifier.isHashedPasswords());
+        verifier.setAllowPlaintextPasswords(false);
+        assertTrue(verifier.isHashedPasswords());
+    }
+
+    @Test
+    public void testStoreKindToldByStoreWins() {
+        StoredPasswordVerifier verifier = new StoredPasswordVerifier();
+        verifier.setHashedPasswords(true);
+        verifier.verify("bob", "secret", "secret");
+        assertTrue(verifier.isHashedPasswords());
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.ws.security.sts.provider.user;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class XmlUserStoreTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("users", ".xml");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testClassPathDefault() {
+        XmlUserStore store = new XmlUserStore();
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("joe",
+                "joespassword"));
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "joe", "alicespassword"));
+        assertEquals(AuthenticationResult.UNKNOWN_USER, store.authenticate(
+                "joexxx", "joespassword"));
+        assertEquals(AuthenticationResult.UNKNOWN_USER, store.authenticate(
+                "joexxx", null));
+        assertEquals(3, store.getUserCount());
+        assertEquals(1, store.getLoadCount());
+    }
+
+    @Test
+    public void testReloadWhenModified() throws Exception {
+        write("<users><user username='bob' password='secret'/></users>");
+        XmlUserStore store = new XmlUserStore();
+        store.setLocation(file.getPath());
+        store.start();
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("bob",
+                "secret"));
+
+        store.reloadIfModified();
+        assertEquals(1, store.getLoadCount());
+
+        write("<users><user username='bob' password='changed'/>"
+                + "<user username='carol' password='secret'/></users>");
+        file.setLastModified(store.getLastModified() + 2000);
+        store.reloadIfModified();
+        assertEquals(2, store.getLoadCount());
+        assertEquals(2, store.getUserCount());
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "bob", "secret"));
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("carol",
+                "secret"));
+    }
+
+    @Test
+    public void testBrokenFileKeepsPreviousUsers() throws Exception {
+        write("<users><user username='bob' password='secret'/></users>");
+        XmlUserStore store = new XmlUserStore();
+        store.setLocation(file.getPath());
+        store.start();
+
+        write("<users><user username='bob'");
+        file.setLastModified(store.getLastModified() + 2000);
+        store.reloadIfModified();
+        assertEquals(1, store.getFailedLoadCount());
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("bob",
+                "secret"));
+    }
+
+    @Test
+    public void testFirstEntryOfDuplicateUserWins() throws Exception {
+        write("<users><user username='bob' password='first'/>"
+                + "<user username='bob' password='second'/></users>");
+        XmlUserStore store = new XmlUserStore();
+        store.setLocation(file.getPath());
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("bob",
+                "first"));
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "bob", "second"));
+    }
+
+    @Test
+    public void testHashedPasswordIsCached() throws Exception {
+        String hash = PasswordHash.create("secret", 1000);
+        write("<users><user username='bob' password='" + hash + "'/></users>");
+        XmlUserStore store = new XmlUserStore();
+        store.setLocation(file.getPath());
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "bob", "wrong"));
+        assertEquals(0, store.getCacheSize());
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("bob",
+                "secret"));
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("bob",
+                "secret"));
+        assertEquals(1, store.getCacheHitCount());
+        assertEquals(1, store.getCacheSize());
+    }
+
+    @Test
+    public void testChangedHashMissesCache() throws Exception {
+        write("<users><user username='bob' password='"
+                + PasswordHash.create("secret", 1000) + "'/></users>");
+        XmlUserStore store = new XmlUserStore();
+        store.setLocation(file.getPath());
+        store.start();
+        assertEquals(AuthenticationResult.SUCCESS, store.authenticate("bob",
+                "secret"));
+
+        write("<users><user username='bob' password='"
+                + PasswordHash.create("changed", 1000) + "'/></users>");
+        file.setLastModified(store.getLastModified() + 2000);
+        store.reloadIfModified();
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "bob", "secret"));
+        assertEquals(0, store.getCacheHitCount());
+    }
+
+    @Test
+    public void testPlaintextPasswordsCanBeDisabled() throws Exception {
+        write("<users><user username='bob' password='secret'/></users>");
+        XmlUserStore store = new XmlUserStore();
+        store.setLocation(file.getPath());
+        store.setAllowPlaintextPasswords(false);
+        assertEquals(AuthenticationResult.WRONG_PASSWORD, store.authenticate(
+                "bob", "secret"));
+    }
+
+    private void write(String content) throws Exception {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+}